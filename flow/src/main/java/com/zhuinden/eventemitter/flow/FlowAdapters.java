@@ -0,0 +1,379 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter.flow;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.zhuinden.eventemitter.BatchEventObserver;
+import com.zhuinden.eventemitter.EventEmitter;
+import com.zhuinden.eventemitter.EventSource;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * Adapters between {@link EventEmitter} and {@link Flow}, available on Java 9 and above in the {@code event-emitter-flow} artifact.
+ *
+ * An {@link EventEmitter} can only be used on the thread where it was created, so the adapters receive an {@link Executor} that runs
+ * tasks on that thread (for example, the executor of the event loop that owns the emitter). No additional threads are created.
+ */
+public final class FlowAdapters {
+    private static final int DEFAULT_PREFETCH = 128;
+
+    /**
+     * The terminal observer receives the completion or the error of the publisher that a subscriber created by
+     * {@link #toSubscriber(EventEmitter, Executor, int, TerminalObserver)} is subscribed to.
+     *
+     * It is called on the thread of the emitter, after the items received before the terminal signal are emitted.
+     */
+    public interface TerminalObserver {
+        /**
+         * Called when the publisher completed.
+         */
+        void onComplete();
+
+        /**
+         * Called when the publisher failed.
+         *
+         * @param throwable the error
+         */
+        void onError(@Nonnull Throwable throwable);
+    }
+
+    private static final TerminalObserver REPORTING_TERMINAL_OBSERVER = new TerminalObserver() {
+        @Override
+        public void onComplete() {
+        }
+
+        @Override
+        public void onError(@Nonnull Throwable throwable) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, throwable);
+        }
+    };
+
+    private FlowAdapters() {
+    }
+
+    /**
+     * Creates a publisher that publishes the events of the emitter, honouring the demand of each subscriber.
+     *
+     * A subscriber is only registered as an observer of the emitter while it has outstanding demand. While no subscriber (and no other
+     * observer) has demand, the events stay in the pending event queue of the emitter, and they are published once a subscriber
+     * requests them. Only the events beyond the demand of a single batch (see {@link EventEmitter#emitAll(java.util.Collection)}) are
+     * buffered per subscriber.
+     *
+     * Events emitted while a subscriber has no demand, but other observers are registered, are not received by the subscriber.
+     *
+     * The subscribers are signalled on the thread of the emitter.
+     *
+     * @param emitter         the emitter
+     * @param emitterExecutor the executor that runs tasks on the thread where the emitter was created
+     * @param <E>             the event type
+     * @return the publisher
+     */
+    @Nonnull
+    public static <E> Flow.Publisher<E> toPublisher(@Nonnull final EventEmitter<E> emitter, @Nonnull final Executor emitterExecutor) {
+        //noinspection ConstantConditions
+        if(emitter == null) {
+            throw new IllegalArgumentException("Emitter should not be null!");
+        }
+        //noinspection ConstantConditions
+        if(emitterExecutor == null) {
+            throw new IllegalArgumentException("Emitter executor should not be null!");
+        }
+        return new Flow.Publisher<E>() {
+            @Override
+            public void subscribe(final Flow.Subscriber<? super E> subscriber) {
+                Objects.requireNonNull(subscriber, "Subscriber should not be null!"); // rule 1.9
+                emitterExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        subscriber.onSubscribe(new EmitterSubscription<>(emitter, emitterExecutor, subscriber));
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Creates a subscriber that emits the received items on the emitter.
+     *
+     * @param emitter         the emitter
+     * @param emitterExecutor the executor that runs tasks on the thread where the emitter was created
+     * @param <E>             the event type
+     * @return the subscriber
+     * @see #toSubscriber(EventEmitter, Executor, int, TerminalObserver)
+     */
+    @Nonnull
+    public static <E> Flow.Subscriber<E> toSubscriber(@Nonnull EventEmitter<E> emitter, @Nonnull Executor emitterExecutor) {
+        return toSubscriber(emitter, emitterExecutor, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * Creates a subscriber that emits the received items on the emitter.
+     *
+     * @param emitter         the emitter
+     * @param emitterExecutor the executor that runs tasks on the thread where the emitter was created
+     * @param prefetch        the maximum number of requested items that are not yet emitted
+     * @param <E>             the event type
+     * @return the subscriber
+     * @see #toSubscriber(EventEmitter, Executor, int, TerminalObserver)
+     */
+    @Nonnull
+    public static <E> Flow.Subscriber<E> toSubscriber(@Nonnull EventEmitter<E> emitter, @Nonnull Executor emitterExecutor, int prefetch) {
+        return toSubscriber(emitter, emitterExecutor, prefetch, REPORTING_TERMINAL_OBSERVER);
+    }
+
+    /**
+     * Creates a subscriber that emits the received items on the emitter.
+     *
+     * The subscriber requests at most the prefetch amount of items that are not yet emitted, and requests more only after the items are
+     * emitted on the thread of the emitter.
+     *
+     * An event source has no terminal state, so the completion or the error of the publisher is passed to the terminal observer. When no
+     * terminal observer is given, the completion is ignored, and the error is reported to the uncaught exception handler of the thread of
+     * the emitter.
+     *
+     * @param emitter          the emitter
+     * @param emitterExecutor  the executor that runs tasks on the thread where the emitter was created
+     * @param prefetch         the maximum number of requested items that are not yet emitted
+     * @param terminalObserver the observer of the completion or the error of the publisher
+     * @param <E>              the event type
+     * @return the subscriber
+     */
+    @Nonnull
+    public static <E> Flow.Subscriber<E> toSubscriber(@Nonnull EventEmitter<E> emitter, @Nonnull Executor emitterExecutor, int prefetch, @Nonnull TerminalObserver terminalObserver) {
+        //noinspection ConstantConditions
+        if(emitter == null) {
+            throw new IllegalArgumentException("Emitter should not be null!");
+        }
+        //noinspection ConstantConditions
+        if(emitterExecutor == null) {
+            throw new IllegalArgumentException("Emitter executor should not be null!");
+        }
+        if(prefetch <= 0) {
+            throw new IllegalArgumentException("Prefetch should be positive!");
+        }
+        //noinspection ConstantConditions
+        if(terminalObserver == null) {
+            throw new IllegalArgumentException("Terminal observer should not be null!");
+        }
+        return new EmitterSubscriber<>(emitter, emitterExecutor, prefetch, terminalObserver);
+    }
+
+    private static final class EmitterSubscription<E> implements Flow.Subscription, BatchEventObserver<E> {
+        private final EventEmitter<E> emitter;
+
+        private final Executor emitterExecutor;
+
+        private final Flow.Subscriber<? super E> subscriber;
+
+        // the fields below are confined to the thread of the emitter
+
+        private final ArrayDeque<E> buffer = new ArrayDeque<>();
+
+        private long demand = 0L;
+
+        @Nullable
+        private EventSource.NotificationToken notificationToken = null;
+
+        private boolean isDraining = false;
+
+        private boolean isCancelled = false;
+
+        EmitterSubscription(EventEmitter<E> emitter, Executor emitterExecutor, Flow.Subscriber<? super E> subscriber) {
+            this.emitter = emitter;
+            this.emitterExecutor = emitterExecutor;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(final long n) {
+            emitterExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    onRequest(n);
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            emitterExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    onCancel();
+                }
+            });
+        }
+
+        @Override
+        public void onEventReceived(@Nonnull E event) {
+            if(isCancelled) {
+                return;
+            }
+            buffer.add(event);
+            if(isDraining) {
+                if(buffer.size() >= demand) {
+                    stopListening(); // the rest of the events stay in the pending event queue
+                }
+            } else {
+                drain();
+            }
+        }
+
+        @Override
+        public void onEventsReceived(@Nonnull List<E> events) {
+            for(int i = 0, size = events.size(); i < size; i++) {
+                onEventReceived(events.get(i));
+            }
+        }
+
+        private void onRequest(long n) {
+            if(isCancelled) {
+                return;
+            }
+            if(n <= 0) {
+                onCancel();
+                subscriber.onError(new IllegalArgumentException("Requested amount should be positive, but was " + n + " (rule 3.9)!"));
+                return;
+            }
+            demand += n;
+            if(demand < 0) { // overflow, the demand is unbounded (rule 3.17)
+                demand = Long.MAX_VALUE;
+            }
+            drain();
+        }
+
+        private void onCancel() {
+            isCancelled = true;
+            buffer.clear();
+            stopListening();
+        }
+
+        private void drain() {
+            if(isDraining) { // request() was called from onNext(), the demand is handled by the loop below
+                return;
+            }
+            isDraining = true;
+            try {
+                while(!isCancelled && demand > 0) {
+                    if(!buffer.isEmpty()) {
+                        demand--;
+                        subscriber.onNext(buffer.poll());
+                    } else if(notificationToken == null) {
+                        notificationToken = emitter.registerObserver(this);
+                        emitter.dispatchPendingEvents();
+                    } else {
+                        break;
+                    }
+                }
+                if(demand == 0) {
+                    stopListening();
+                }
+            } finally {
+                isDraining = false;
+            }
+        }
+
+        private void stopListening() {
+            EventSource.NotificationToken notificationToken = this.notificationToken;
+            if(notificationToken != null) {
+                this.notificationToken = null;
+                notificationToken.stopListening();
+            }
+        }
+    }
+
+    private static final class EmitterSubscriber<E> implements Flow.Subscriber<E> {
+        private final EventEmitter<E> emitter;
+
+        private final Executor emitterExecutor;
+
+        private final int prefetch;
+
+        private final int limit;
+
+        private final TerminalObserver terminalObserver;
+
+        private volatile Flow.Subscription subscription;
+
+        private int emittedCount = 0; // confined to the thread of the emitter
+
+        EmitterSubscriber(EventEmitter<E> emitter, Executor emitterExecutor, int prefetch, TerminalObserver terminalObserver) {
+            this.emitter = emitter;
+            this.emitterExecutor = emitterExecutor;
+            this.prefetch = prefetch;
+            this.terminalObserver = terminalObserver;
+            this.limit = prefetch - (prefetch >> 1); // requests more once half of the prefetched items are emitted
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            Objects.requireNonNull(subscription, "Subscription should not be null!"); // rule 2.13
+            if(this.subscription != null) { // rule 2.5
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            subscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(final E item) {
+            Objects.requireNonNull(item, "Item should not be null!"); // rule 2.13
+            emitterExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        emitter.emit(item);
+                    } finally { // the item is consumed even if an observer threw, so the demand must still be replenished
+                        if(++emittedCount == limit) {
+                            emittedCount = 0;
+                            subscription.request(limit);
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            Objects.requireNonNull(throwable, "Throwable should not be null!"); // rule 2.13
+            emitterExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    terminalObserver.onError(throwable);
+                }
+            });
+        }
+
+        @Override
+        public void onComplete() {
+            emitterExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    terminalObserver.onComplete();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter.flow;
+
+import javax.annotation.Nonnull;
+
+import com.zhuinden.eventemitter.EventEmitter;
+import com.zhuinden.eventemitter.EventSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FlowAdaptersTest {
+    private ExecutorService emitterExecutor;
+
+    private EventEmitter<Integer> emitter;
+
+    @Before
+    public void setUp() throws Exception {
+        emitterExecutor = Executors.newSingleThreadExecutor();
+        emitter = onEmitterThread(new Callable<EventEmitter<Integer>>() {
+            @Override
+            public EventEmitter<Integer> call() {
+                return new EventEmitter<>();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        emitterExecutor.shutdown();
+    }
+
+    @Test
+    public void publisherHonoursDemand() throws Exception {
+        emitEvents(0, 5);
+
+        TestSubscriber subscriber = new TestSubscriber();
+        FlowAdapters.toPublisher(emitter, emitterExecutor).subscribe(subscriber);
+        awaitEmitterThread();
+
+        assertThat(subscriber.items).isEmpty();
+        assertThat(getPendingEventCount()).isEqualTo(5);
+
+        subscriber.subscription.request(2);
+        awaitEmitterThread();
+
+        assertThat(subscriber.items).containsExactly(0, 1);
+        assertThat(getPendingEventCount()).isEqualTo(3);
+
+        subscriber.subscription.request(4);
+        awaitEmitterThread();
+
+        assertThat(subscriber.items).containsExactly(0, 1, 2, 3, 4);
+        assertThat(getPendingEventCount()).isEqualTo(0);
+
+        emitEvents(5, 7);
+
+        assertThat(subscriber.items).containsExactly(0, 1, 2, 3, 4, 5);
+        assertThat(getPendingEventCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void cancelledSubscriberReceivesNoMoreEvents() throws Exception {
+        TestSubscriber subscriber = new TestSubscriber();
+        FlowAdapters.toPublisher(emitter, emitterExecutor).subscribe(subscriber);
+        awaitEmitterThread();
+
+        subscriber.subscription.request(10);
+        emitEvents(0, 2);
+
+        subscriber.subscription.cancel();
+        emitEvents(2, 4);
+
+        subscriber.subscription.request(10);
+        awaitEmitterThread();
+
+        assertThat(subscriber.items).containsExactly(0, 1);
+        assertThat(getPendingEventCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void nonPositiveRequestIsSignalledAsError() throws Exception {
+        TestSubscriber subscriber = new TestSubscriber();
+        FlowAdapters.toPublisher(emitter, emitterExecutor).subscribe(subscriber);
+        awaitEmitterThread();
+
+        subscriber.subscription.request(0);
+        awaitEmitterThread();
+
+        assertThat(subscriber.errors).hasSize(1);
+        assertThat(subscriber.errors.get(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void subscriberEmitsItemsAndForwardsTerminalSignals() throws Exception {
+        final List<Object> signals = Collections.synchronizedList(new ArrayList<Object>());
+        onEmitterThread(new Callable<Void>() {
+            @Override
+            public Void call() {
+                emitter.startListening(new EventSource.EventObserver<Integer>() {
+                    @Override
+                    public void onEventReceived(@Nonnull Integer event) {
+                        signals.add(event);
+                    }
+                });
+                return null;
+            }
+        });
+
+        final List<Long> requests = Collections.synchronizedList(new ArrayList<Long>());
+        Flow.Subscription subscription = new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requests.add(n);
+            }
+
+            @Override
+            public void cancel() {
+            }
+        };
+
+        final IllegalStateException error = new IllegalStateException("Failed");
+        Flow.Subscriber<Integer> subscriber = FlowAdapters.toSubscriber(emitter, emitterExecutor, 4, new FlowAdapters.TerminalObserver() {
+            @Override
+            public void onComplete() {
+                signals.add("complete");
+            }
+
+            @Override
+            public void onError(@Nonnull Throwable throwable) {
+                signals.add(throwable);
+            }
+        });
+
+        subscriber.onSubscribe(subscription);
+        subscriber.onNext(1);
+        subscriber.onNext(2);
+        subscriber.onError(error);
+        awaitEmitterThread();
+
+        assertThat(signals).containsExactly(1, 2, error);
+        assertThat(requests).containsExactly(4L, 2L);
+
+        Flow.Subscriber<Integer> completingSubscriber = FlowAdapters.toSubscriber(emitter, emitterExecutor, 4, new FlowAdapters.TerminalObserver() {
+            @Override
+            public void onComplete() {
+                signals.add("complete");
+            }
+
+            @Override
+            public void onError(@Nonnull Throwable throwable) {
+                signals.add(throwable);
+            }
+        });
+        completingSubscriber.onSubscribe(subscription);
+        completingSubscriber.onNext(3);
+        completingSubscriber.onComplete();
+        awaitEmitterThread();
+
+        assertThat(signals).containsExactly(1, 2, error, 3, "complete");
+    }
+
+    @Test
+    public void subscriberReplenishesDemandWhenObserverThrows() throws Exception {
+        onEmitterThread(new Callable<Void>() {
+            @Override
+            public Void call() {
+                emitter.startListening(new EventSource.EventObserver<Integer>() {
+                    @Override
+                    public void onEventReceived(@Nonnull Integer event) {
+                        throw new IllegalStateException("Failed to handle " + event);
+                    }
+                });
+                return null;
+            }
+        });
+
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        Executor reportingExecutor = new Executor() {
+            @Override
+            public void execute(@Nonnull final Runnable command) {
+                emitterExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            command.run();
+                        } catch(RuntimeException e) {
+                            failures.add(e);
+                        }
+                    }
+                });
+            }
+        };
+
+        final List<Long> requests = Collections.synchronizedList(new ArrayList<Long>());
+        Flow.Subscriber<Integer> subscriber = FlowAdapters.toSubscriber(emitter, reportingExecutor, 4);
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requests.add(n);
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        for(int i = 0; i < 4; i++) {
+            subscriber.onNext(i);
+        }
+        awaitEmitterThread();
+
+        assertThat(failures).hasSize(4);
+        assertThat(requests).containsExactly(4L, 2L, 2L);
+    }
+
+    private <T> T onEmitterThread(Callable<T> task) throws Exception {
+        return emitterExecutor.submit(task).get();
+    }
+
+    private void awaitEmitterThread() throws Exception {
+        onEmitterThread(new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        });
+    }
+
+    private void emitEvents(final int from, final int to) throws Exception {
+        onEmitterThread(new Callable<Void>() {
+            @Override
+            public Void call() {
+                for(int i = from; i < to; i++) {
+                    emitter.emit(i);
+                }
+                return null;
+            }
+        });
+    }
+
+    private int getPendingEventCount() throws Exception {
+        return onEmitterThread(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return emitter.getPendingEventCount();
+            }
+        });
+    }
+
+    private static final class TestSubscriber implements Flow.Subscriber<Integer> {
+        final List<Integer> items = Collections.synchronizedList(new ArrayList<Integer>());
+
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            errors.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of disposing a {@link CompositeNotificationToken} that tracks 10k observers of the same emitter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompositeDisposalBenchmark {
+    private static final int TOKEN_COUNT = 10000;
+
+    private final EventSource.EventObserver<Object> observer = new EventSource.EventObserver<Object>() {
+        @Override
+        public void onEventReceived(@Nonnull Object event) {
+            // no-op
+        }
+    };
+
+    private CompositeNotificationToken compositeNotificationToken;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        EventEmitter<Object> emitter = new EventEmitter<>();
+
+        compositeNotificationToken = new CompositeNotificationToken();
+        for(int i = 0; i < TOKEN_COUNT; i++) {
+            compositeNotificationToken.add(emitter.startListening(observer));
+        }
+    }
+
+    @Benchmark
+    public void stopListening() {
+        compositeNotificationToken.stopListening();
+    }
+}
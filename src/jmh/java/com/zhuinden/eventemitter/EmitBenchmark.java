@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link EventEmitter#emit(Object)} depending on the number of observers.
+ *
+ * With 0 observers, events are enqueued into a bounded pending event queue that drops the oldest events, so that the heap does not grow.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmitBenchmark {
+    @Param({"0", "1", "10", "1000"})
+    public int observerCount;
+
+    private EventEmitter<Object> emitter;
+
+    private final Object event = new Object();
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        emitter = new EventEmitter.Builder<Object>()
+            .setCapacity(1024)
+            .setOverflowPolicy(OverflowPolicy.DROP_OLDEST)
+            .build();
+
+        for(int i = 0; i < observerCount; i++) {
+            emitter.startListening(new EventSource.EventObserver<Object>() {
+                @Override
+                public void onEventReceived(@Nonnull Object event) {
+                    blackhole.consume(event);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public void emit() {
+        emitter.emit(event);
+    }
+}
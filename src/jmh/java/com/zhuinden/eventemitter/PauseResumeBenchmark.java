@@ -0,0 +1,72 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of enqueueing events while the emitter is paused, and draining them when it is resumed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PauseResumeBenchmark {
+    private static final int EVENT_COUNT = 1000;
+
+    @Param({"1", "10"})
+    public int observerCount;
+
+    private EventEmitter<Object> emitter;
+
+    private final Object event = new Object();
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        emitter = new EventEmitter<>();
+
+        for(int i = 0; i < observerCount; i++) {
+            emitter.startListening(new EventSource.EventObserver<Object>() {
+                @Override
+                public void onEventReceived(@Nonnull Object event) {
+                    blackhole.consume(event);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENT_COUNT)
+    public void pauseThenResume() {
+        emitter.setPaused(true);
+        for(int i = 0; i < EVENT_COUNT; i++) {
+            emitter.emit(event);
+        }
+        emitter.setPaused(false);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The async event source delivers the events of another {@link EventSource} to its observers on an {@link Executor}.
+ *
+ * Each observer has its own mailbox, so an observer receives the events in the order they were emitted, but different observers can
+ * receive events in parallel. A slow observer does not block the thread that emits the events, only its own mailbox fills up.
+ *
+ * The observers are registered to the wrapped event source on the thread where {@link #startListening(EventObserver)} is called, so
+ * the threading rules of the wrapped event source still apply to registering and unregistering.
+ *
+ * @param <E> the event type
+ */
+public class AsyncEventSource<E> implements EventSource<E> {
+    private final EventSource<E> eventSource;
+
+    private final Executor executor;
+
+    private final int mailboxCapacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * Creates an async event source with unbounded mailboxes.
+     *
+     * @param eventSource the event source
+     * @param executor    the executor that calls the observers
+     */
+    public AsyncEventSource(@Nonnull EventSource<E> eventSource, @Nonnull Executor executor) {
+        this(eventSource, executor, PendingEventQueue.UNBOUNDED, OverflowPolicy.THROW);
+    }
+
+    /**
+     * Creates an async event source with bounded mailboxes.
+     *
+     * @param eventSource     the event source
+     * @param executor        the executor that calls the observers
+     * @param mailboxCapacity the maximum number of events waiting to be delivered to a single observer
+     * @param overflowPolicy  the overflow policy, applied on the emitting thread when a mailbox is full. {@link OverflowPolicy#COALESCE_BY_KEY} is not supported.
+     */
+    public AsyncEventSource(@Nonnull EventSource<E> eventSource, @Nonnull Executor executor, int mailboxCapacity, @Nonnull OverflowPolicy overflowPolicy) {
+        //noinspection ConstantConditions
+        if(eventSource == null) {
+            throw new IllegalArgumentException("Event source should not be null!");
+        }
+        //noinspection ConstantConditions
+        if(executor == null) {
+            throw new IllegalArgumentException("Executor should not be null!");
+        }
+        if(mailboxCapacity <= 0) {
+            throw new IllegalArgumentException("Mailbox capacity should be positive!");
+        }
+        //noinspection ConstantConditions
+        if(overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy should not be null!");
+        }
+        if(overflowPolicy == OverflowPolicy.COALESCE_BY_KEY) {
+            throw new IllegalArgumentException("The COALESCE_BY_KEY overflow policy is not supported for mailboxes!");
+        }
+        this.eventSource = eventSource;
+        this.executor = executor;
+        this.mailboxCapacity = mailboxCapacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Creates an executor suitable for async event delivery.
+     *
+     * On Java 21 and above, this is a virtual-thread-per-task executor. Otherwise, it is a cached thread pool of daemon threads.
+     *
+     * @return the executor service
+     */
+    @Nonnull
+    public static ExecutorService createDefaultExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch(Exception e) {
+            // virtual threads are not available on this runtime
+        }
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@Nonnull Runnable runnable) {
+                Thread thread = new Thread(runnable, "event-emitter-async-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Nonnull
+    @Override
+    public final NotificationToken startListening(@Nonnull EventObserver<E> observer) {
+        //noinspection ConstantConditions
+        if(observer == null) {
+            throw new IllegalArgumentException("Observer should not be null!");
+        }
+
+        final Mailbox<E> mailbox = new Mailbox<>(observer, executor, new PendingEventQueue<E>(mailboxCapacity, overflowPolicy, null));
+        final NotificationToken notificationToken = eventSource.startListening(mailbox);
+
+        return new NotificationToken() {
+            @Override
+            public void stopListening() {
+                notificationToken.stopListening();
+                mailbox.close();
+            }
+        };
+    }
+
+    private static final class Mailbox<E> implements EventObserver<E>, Runnable {
+        private final EventObserver<E> observer;
+
+        private final Executor executor;
+
+        private final PendingEventQueue<E> events;
+
+        private boolean isScheduled = false;
+
+        private volatile boolean isClosed = false;
+
+        Mailbox(EventObserver<E> observer, Executor executor, PendingEventQueue<E> events) {
+            this.observer = observer;
+            this.executor = executor;
+            this.events = events;
+        }
+
+        @Override
+        public void onEventReceived(@Nonnull E event) {
+            synchronized(this) {
+                if(isClosed) {
+                    return;
+                }
+                events.offer(event);
+                if(isScheduled) {
+                    return;
+                }
+                isScheduled = true;
+            }
+            schedule();
+        }
+
+        @Override
+        public void run() {
+            boolean isCompleted = false;
+            try {
+                while(!isClosed) {
+                    E event;
+                    synchronized(this) {
+                        event = events.poll();
+                        if(event == null) {
+                            isScheduled = false;
+                            isCompleted = true;
+                            return;
+                        }
+                    }
+                    observer.onEventReceived(event);
+                }
+                isCompleted = true;
+            } finally {
+                if(!isCompleted) { // the observer threw, the remaining events are delivered in a new task
+                    boolean hasEvents;
+                    synchronized(this) {
+                        hasEvents = !isClosed && !events.isEmpty();
+                        isScheduled = hasEvents;
+                    }
+                    if(hasEvents) {
+                        schedule();
+                    }
+                }
+            }
+        }
+
+        void close() {
+            isClosed = true;
+            synchronized(this) {
+                while(events.poll() != null) {
+                    // discard the events that were not delivered yet
+                }
+            }
+        }
+
+        private void schedule() {
+            try {
+                executor.execute(this);
+            } catch(RuntimeException e) {
+                synchronized(this) {
+                    isScheduled = false;
+                }
+                throw e;
+            }
+        }
+    }
+}
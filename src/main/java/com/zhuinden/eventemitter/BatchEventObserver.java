@@ -0,0 +1,36 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import java.util.List;
+
+/**
+ * The batch event observer can receive the events emitted together by {@link EventEmitter#emitAll(java.util.Collection)} in a single call.
+ *
+ * Events emitted one by one are still received by {@link #onEventReceived(Object)}.
+ *
+ * @param <E> the event type
+ */
+public interface BatchEventObserver<E> extends EventSource.EventObserver<E> {
+    /**
+     * Called when a batch of events is received.
+     *
+     * @param events the events, in emission order. The list is read-only.
+     */
+    void onEventsReceived(@Nonnull List<E> events);
+}
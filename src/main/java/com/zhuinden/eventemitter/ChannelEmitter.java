@@ -0,0 +1,458 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The channel emitter lets you create many lightweight event streams, which share a single pending event queue, pause state and dispatch loop.
+ *
+ * Each {@link Channel} is an {@link EventSource} that behaves like an {@link EventEmitter}: it enqueues its events while it has no
+ * observers, or while the channel emitter is paused. A channel only keeps a reference to its emitter, and to its observers once the
+ * first observer is registered, so creating thousands of channels is cheap.
+ *
+ * The pending events of all channels are kept in the order they were emitted, so when the channel emitter is no longer paused, the
+ * events are received in the order they were emitted, across all channels. Each channel counts its pending events, so registering the
+ * first observer of a channel without pending events does not walk the shared queue, and a drain stops once the observed channels have
+ * no pending events left.
+ *
+ * By default, the shared pending event queue is unbounded. A bounded queue can be configured with
+ * {@link #ChannelEmitter(int, OverflowPolicy)}. The pending events of a channel that will never be observed can be dropped with
+ * {@link Channel#discardPendingEvents()}.
+ *
+ * You can only emit events and listen for events and unregister observers on the thread where you created the channel emitter.
+ */
+public class ChannelEmitter {
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * A channel emits the events of a single type, on the dispatch loop of its {@link ChannelEmitter}.
+     *
+     * @param <E> the event type
+     */
+    public static final class Channel<E> implements EventSource<E> {
+        private final ChannelEmitter channelEmitter;
+
+        @Nullable
+        private ObserverRegistry<EventObserver<E>> observers = null;
+
+        int pendingEventCount = 0;
+
+        Channel(ChannelEmitter channelEmitter) {
+            this.channelEmitter = channelEmitter;
+        }
+
+        /**
+         * @inheritDoc
+         */
+        @Nonnull
+        @Override
+        public NotificationToken startListening(@Nonnull EventObserver<E> observer) {
+            if(channelEmitter.threadId != Thread.currentThread().getId()) {
+                throw new IllegalStateException("You should register observers only on the thread where the emitter was created");
+            }
+
+            //noinspection ConstantConditions
+            if(observer == null) {
+                throw new IllegalArgumentException("Observer should not be null!");
+            }
+
+            ObserverRegistry<EventObserver<E>> observers = this.observers;
+            if(observers == null) {
+                observers = new ObserverRegistry<>();
+                this.observers = observers;
+            }
+
+            ChannelToken<E> notificationToken = new ChannelToken<>(channelEmitter, this, observers, observers.add(observer));
+            if(observers.getObserverCount() == 1) {
+                channelEmitter.onChannelObserved(this);
+            }
+            return notificationToken;
+        }
+
+        /**
+         * Emits the event to all observers of the channel. If the channel has no observers, or the channel emitter is paused, it is
+         * enqueued until the event can be emitted.
+         *
+         * @param event the event
+         */
+        public void emit(@Nonnull E event) {
+            channelEmitter.emit(this, event);
+        }
+
+        /**
+         * Drops the pending events of the channel, for example when the channel will never be observed.
+         */
+        public void discardPendingEvents() {
+            channelEmitter.discardPendingEvents(this);
+        }
+
+        /**
+         * Returns the number of events of the channel that are enqueued, waiting for an observer or for the channel emitter to be no longer paused.
+         *
+         * @return the pending event count
+         */
+        public int getPendingEventCount() {
+            return pendingEventCount;
+        }
+
+        boolean hasObservers() {
+            return observers != null && !observers.isEmpty();
+        }
+
+        void notifyObservers(E event) {
+            final ObserverRegistry<EventObserver<E>> observers = this.observers;
+            if(observers == null) {
+                return;
+            }
+            observers.beginDispatch();
+            try {
+                ObserverRegistry.Entry<EventObserver<E>>[] slots = observers.getSlots();
+                for(int i = observers.getSlotCount() - 1; i >= 0; i--) {
+                    ObserverRegistry.Entry<EventObserver<E>> entry = slots[i];
+                    if(entry != null && entry.isActive) {
+                        entry.observer.onEventReceived(event);
+                    }
+                }
+            } finally {
+                observers.endDispatch();
+            }
+        }
+    }
+
+    private final long threadId = Thread.currentThread().getId();
+
+    private final int capacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    // the pending events are kept in parallel arrays, indexed by sequence, where dispatched events leave a gap until the queue is compacted
+    private Channel<?>[] pendingChannels = new Channel<?>[INITIAL_CAPACITY];
+
+    private Object[] pendingEvents = new Object[INITIAL_CAPACITY];
+
+    private int mask = INITIAL_CAPACITY - 1;
+
+    private long headSequence = 0L;
+
+    private long tailSequence = 0L;
+
+    private int pendingEventCount = 0;
+
+    private int observedPendingEventCount = 0; // the pending events of the channels that have observers
+
+    private long droppedEventCount = 0L;
+
+    private boolean isPaused = false;
+
+    private boolean isDraining = false;
+
+    private boolean isDrainRequested = false;
+
+    /**
+     * Creates a channel emitter with an unbounded pending event queue.
+     */
+    public ChannelEmitter() {
+        this(PendingEventQueue.UNBOUNDED, OverflowPolicy.THROW);
+    }
+
+    /**
+     * Creates a channel emitter whose pending event queue holds at most as many events as its capacity, across all channels.
+     *
+     * @param capacity       the capacity
+     * @param overflowPolicy the overflow policy applied when the queue is full, {@link OverflowPolicy#COALESCE_BY_KEY} is not supported
+     */
+    public ChannelEmitter(int capacity, @Nonnull OverflowPolicy overflowPolicy) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be positive!");
+        }
+        //noinspection ConstantConditions
+        if(overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy should not be null!");
+        }
+        if(overflowPolicy == OverflowPolicy.COALESCE_BY_KEY) {
+            throw new IllegalArgumentException("The COALESCE_BY_KEY overflow policy is not supported for channels!");
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Creates a new channel.
+     *
+     * @param <E> the event type
+     * @return the channel
+     */
+    @Nonnull
+    public final <E> Channel<E> createChannel() {
+        return new Channel<>(this);
+    }
+
+    /**
+     * When paused, the channels will not emit any events until the channel emitter is no longer paused.
+     *
+     * @param paused if the channel emitter should be paused
+     */
+    public final void setPaused(boolean paused) {
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You can only emit events on the thread where the emitter was created");
+        }
+
+        this.isPaused = paused;
+        if(!paused) {
+            emitPendingEvents();
+        }
+    }
+
+    /**
+     * Returns the number of events of all channels that are enqueued, waiting for an observer or for the channel emitter to be no longer paused.
+     *
+     * @return the pending event count
+     */
+    public final int getPendingEventCount() {
+        return pendingEventCount;
+    }
+
+    /**
+     * Returns the number of events that were dropped because the pending event queue was full.
+     *
+     * @return the dropped event count
+     */
+    public final long getDroppedEventCount() {
+        return droppedEventCount;
+    }
+
+    <E> void emit(Channel<E> channel, E event) {
+        //noinspection ConstantConditions
+        if(event == null) {
+            throw new IllegalArgumentException("Event should not be null!");
+        }
+
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You can only emit events on the thread where the emitter was created");
+        }
+
+        if(isPaused || !channel.hasObservers()) {
+            enqueue(channel, event);
+        } else {
+            channel.notifyObservers(event);
+        }
+    }
+
+    void onChannelObserved(Channel<?> channel) {
+        if(channel.pendingEventCount == 0) {
+            return; // nothing to drain
+        }
+        observedPendingEventCount += channel.pendingEventCount;
+        emitPendingEvents();
+    }
+
+    void onChannelUnobserved(Channel<?> channel) {
+        observedPendingEventCount -= channel.pendingEventCount;
+    }
+
+    void discardPendingEvents(Channel<?> channel) {
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You can only discard events on the thread where the emitter was created");
+        }
+        if(channel.pendingEventCount == 0) {
+            return;
+        }
+        for(long sequence = headSequence; sequence < tailSequence && channel.pendingEventCount > 0; sequence++) {
+            final int index = (int) sequence & mask;
+            if(pendingChannels[index] == channel) {
+                removePendingEvent(index);
+            }
+        }
+        skipDispatchedEvents();
+        compactIfNeeded();
+    }
+
+    @SuppressWarnings("unchecked")
+    void emitPendingEvents() {
+        if(isDraining) { // an observer registered or resumed during the drain, so the drain is restarted from the head
+            isDrainRequested = true;
+            return;
+        }
+        isDraining = true;
+        try {
+            do {
+                isDrainRequested = false;
+                // the events of the channels without observers are skipped, and the drain stops once no observed channel has pending events
+                long sequence = headSequence;
+                while(sequence < tailSequence && !isPaused && observedPendingEventCount > 0) {
+                    final int index = (int) sequence & mask;
+                    final Channel<Object> channel = (Channel<Object>) pendingChannels[index];
+                    if(channel != null && channel.hasObservers()) {
+                        final Object event = pendingEvents[index];
+                        removePendingEvent(index);
+                        skipDispatchedEvents();
+                        channel.notifyObservers(event);
+                    }
+                    sequence = Math.max(sequence + 1, headSequence); // an observer may have dropped the events at the head
+                }
+            } while(isDrainRequested && !isPaused);
+        } finally {
+            isDraining = false;
+            isDrainRequested = false;
+            compactIfNeeded();
+        }
+    }
+
+    private void enqueue(Channel<?> channel, Object event) {
+        if(pendingEventCount == capacity) {
+            switch(overflowPolicy) {
+                case DROP_NEWEST:
+                    droppedEventCount++;
+                    return;
+                case THROW:
+                    throw new IllegalStateException("The pending event queue is full (capacity: " + capacity + ")!");
+                case DROP_OLDEST:
+                default:
+                    removePendingEvent((int) headSequence & mask); // the head is never a gap
+                    skipDispatchedEvents();
+                    droppedEventCount++;
+                    break;
+            }
+        }
+        if(tailSequence - headSequence == pendingChannels.length) {
+            if(!isDraining && pendingEventCount <= pendingChannels.length >> 1) {
+                compact();
+            } else {
+                grow();
+            }
+        }
+        final int index = (int) tailSequence & mask;
+        pendingChannels[index] = channel;
+        pendingEvents[index] = event;
+        tailSequence++;
+        pendingEventCount++;
+        channel.pendingEventCount++;
+        if(channel.hasObservers()) {
+            observedPendingEventCount++;
+        }
+    }
+
+    private void removePendingEvent(int index) {
+        final Channel<?> channel = pendingChannels[index];
+        //noinspection ConstantConditions
+        if(channel.hasObservers()) {
+            observedPendingEventCount--;
+        }
+        channel.pendingEventCount--;
+        pendingChannels[index] = null;
+        pendingEvents[index] = null;
+        pendingEventCount--;
+    }
+
+    private void skipDispatchedEvents() {
+        while(headSequence < tailSequence && pendingChannels[(int) headSequence & mask] == null) {
+            headSequence++;
+        }
+    }
+
+    /**
+     * Doubles the capacity, keeping each event at the same sequence, so that a drain in progress is not affected.
+     */
+    private void grow() {
+        final int capacity = pendingChannels.length << 1;
+        final int newMask = capacity - 1;
+        Channel<?>[] newPendingChannels = new Channel<?>[capacity];
+        Object[] newPendingEvents = new Object[capacity];
+        for(long sequence = headSequence; sequence < tailSequence; sequence++) {
+            newPendingChannels[(int) sequence & newMask] = pendingChannels[(int) sequence & mask];
+            newPendingEvents[(int) sequence & newMask] = pendingEvents[(int) sequence & mask];
+        }
+        pendingChannels = newPendingChannels;
+        pendingEvents = newPendingEvents;
+        mask = newMask;
+    }
+
+    /**
+     * Compacts the queue once at least half of it is gaps, so that the cost of compaction is amortized over the removed events.
+     */
+    private void compactIfNeeded() {
+        if(!isDraining && pendingEventCount <= (tailSequence - headSequence) >> 1) {
+            compact();
+        }
+    }
+
+    /**
+     * Removes the gaps left by the dispatched events, keeping the order of the remaining events.
+     */
+    private void compact() {
+        long targetSequence = headSequence;
+        for(long sequence = headSequence; sequence < tailSequence; sequence++) {
+            final int index = (int) sequence & mask;
+            final Channel<?> channel = pendingChannels[index];
+            if(channel != null) {
+                if(targetSequence != sequence) {
+                    final int targetIndex = (int) targetSequence & mask;
+                    pendingChannels[targetIndex] = channel;
+                    pendingEvents[targetIndex] = pendingEvents[index];
+                    pendingChannels[index] = null;
+                    pendingEvents[index] = null;
+                }
+                targetSequence++;
+            }
+        }
+        tailSequence = targetSequence;
+    }
+
+    private static final class ChannelToken<E> implements ObserverRegistry.Token {
+        private final ChannelEmitter channelEmitter;
+
+        private final Channel<E> channel;
+
+        private final ObserverRegistry<EventSource.EventObserver<E>> registry;
+
+        private final ObserverRegistry.Entry<EventSource.EventObserver<E>> entry;
+
+        private boolean isDisposed = false;
+
+        ChannelToken(ChannelEmitter channelEmitter, Channel<E> channel, ObserverRegistry<EventSource.EventObserver<E>> registry, ObserverRegistry.Entry<EventSource.EventObserver<E>> entry) {
+            this.channelEmitter = channelEmitter;
+            this.channel = channel;
+            this.registry = registry;
+            this.entry = entry;
+        }
+
+        @Override
+        public void stopListening() {
+            if(channelEmitter.threadId != Thread.currentThread().getId()) {
+                throw new IllegalStateException("You should unregister observers only on the thread where the emitter was created");
+            }
+
+            if(isDisposed) {
+                throw new IllegalStateException("This observer has already stopped listening!");
+            }
+
+            isDisposed = true;
+
+            registry.remove(entry);
+            if(registry.isEmpty()) {
+                channelEmitter.onChannelUnobserved(channel);
+            }
+        }
+
+        @Nullable
+        @Override
+        public ObserverRegistry<?> getRegistry() {
+            return channelEmitter.threadId == Thread.currentThread().getId() ? registry : null;
+        }
+    }
+}
@@ -1,48 +1,213 @@
 package com.zhuinden.eventemitter;
 
+import javax.annotation.Nonnull;
+
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A composite notification allows tracking multiple notification tokens, so that they can be cleared all-at-once.
+ *
+ * The tracked notification tokens are kept in a linked list, so a single notification token can be removed in O(1) through the token
+ * returned by {@link #track(EventSource.NotificationToken)}. Composites can be nested, and stopping the outer composite stops the tracked
+ * notification tokens of the nested composites too. A composite can't be nested into itself, directly or through other composites.
+ *
+ * Notification tokens can be added and removed from any thread, and stopping listening can also happen on any thread, as long as the
+ * tracked notification tokens allow it. When multiple observers of the same {@link EventEmitter} stop listening together, the emitter
+ * cleans up its observers only once.
  */
 public class CompositeNotificationToken implements EventSource.NotificationToken {
-    private final long threadId = Thread.currentThread().getId();
+    private final Node head = new Node(this, null);
+
+    private int size = 0;
 
-    private final List<EventSource.NotificationToken> notificationTokens = new ArrayList<>();
+    /**
+     * Starts tracking the received notification token.
+     *
+     * @param notificationToken the notification token
+     * @throws IllegalArgumentException if the notification token is a composite that contains this composite
+     * @see #track(EventSource.NotificationToken)
+     */
+    public void add(@Nonnull EventSource.NotificationToken notificationToken) {
+        track(notificationToken);
+    }
 
     /**
-     * Starts tracking the received notification token. Must be called on the same thread where the composite notification token was created.
+     * Starts tracking the received notification token.
+     *
+     * The returned notification token stops listening with the received notification token, and stops tracking it. It has no effect if
+     * the received notification token was already stopped by this composite.
      *
      * @param notificationToken the notification token
+     * @return the notification token that stops listening, and removes the received notification token from this composite.
+     * @throws IllegalArgumentException if the notification token is a composite that contains this composite
      */
-    public void add(EventSource.NotificationToken notificationToken) {
-        if (threadId != Thread.currentThread().getId()) {
-            throw new IllegalStateException("Cannot add event source on a different thread than where it was created");
+    @Nonnull
+    public EventSource.NotificationToken track(@Nonnull EventSource.NotificationToken notificationToken) {
+        //noinspection ConstantConditions
+        if(notificationToken == null) {
+            throw new IllegalArgumentException("Notification token should not be null!");
+        }
+        if(notificationToken instanceof CompositeNotificationToken
+            && ((CompositeNotificationToken) notificationToken).contains(this, new IdentityHashMap<CompositeNotificationToken, Boolean>())) {
+            throw new IllegalArgumentException("A composite notification token should not be nested into itself!");
         }
 
-        notificationTokens.add(notificationToken);
+        Node node = new Node(this, notificationToken);
+        synchronized(this) {
+            node.prev = head.prev;
+            node.next = head;
+            head.prev.next = node;
+            head.prev = node;
+            node.isLinked = true;
+            size++;
+        }
+        return node;
     }
 
-    private boolean isDisposing = false;
+    /**
+     * Returns the number of tracked notification tokens, not including the notification tokens of nested composites.
+     *
+     * @return the tracked notification token count
+     */
+    public synchronized int size() {
+        return size;
+    }
 
     /**
-     * Stops listening, aka stops listening for all tracked notification tokens. Must be called on the same thread where the composite notification token was created.
+     * Stops listening, aka stops listening for all tracked notification tokens, in reverse order of addition.
+     *
+     * If a tracked notification token throws, the remaining notification tokens are still stopped, and the first exception is rethrown
+     * afterwards (with the later ones added as suppressed exceptions).
+     *
+     * The composite can be reused afterwards.
      */
     @Override
     public void stopListening() {
-        if (threadId != Thread.currentThread().getId()) {
-            throw new IllegalStateException("Cannot stop listening on a different thread than where it was created");
+        List<EventSource.NotificationToken> notificationTokens = new ArrayList<>();
+        removeAll(notificationTokens, new IdentityHashMap<CompositeNotificationToken, Boolean>());
+
+        IdentityHashMap<ObserverRegistry<?>, Boolean> registries = null;
+        for(int i = 0, count = notificationTokens.size(); i < count; i++) {
+            EventSource.NotificationToken notificationToken = notificationTokens.get(i);
+            if(notificationToken instanceof ObserverRegistry.Token) {
+                ObserverRegistry<?> registry = ((ObserverRegistry.Token) notificationToken).getRegistry();
+                if(registry != null) {
+                    if(registries == null) {
+                        registries = new IdentityHashMap<>();
+                    }
+                    if(registries.put(registry, Boolean.TRUE) == null) {
+                        registry.beginDispatch(); // defers the compaction until all entries are removed
+                    }
+                }
+            }
+        }
+
+        RuntimeException exception = null;
+        try {
+            for(int i = 0, count = notificationTokens.size(); i < count; i++) {
+                try {
+                    notificationTokens.get(i).stopListening();
+                } catch(RuntimeException e) { // the remaining tokens are no longer tracked, so they must be stopped anyway
+                    if(exception == null) {
+                        exception = e;
+                    } else {
+                        exception.addSuppressed(e);
+                    }
+                }
+            }
+        } finally {
+            if(registries != null) {
+                for(ObserverRegistry<?> registry : registries.keySet()) {
+                    registry.endDispatch();
+                }
+            }
+        }
+        if(exception != null) {
+            throw exception;
         }
-        if (isDisposing) {
+    }
+
+    private boolean contains(CompositeNotificationToken composite, Map<CompositeNotificationToken, Boolean> visited) {
+        if(this == composite) {
+            return true;
+        }
+        if(visited.put(this, Boolean.TRUE) != null) {
+            return false;
+        }
+        List<CompositeNotificationToken> nestedComposites = new ArrayList<>();
+        synchronized(this) {
+            for(Node node = head.next; node != head; node = node.next) {
+                if(node.notificationToken instanceof CompositeNotificationToken) {
+                    nestedComposites.add((CompositeNotificationToken) node.notificationToken);
+                }
+            }
+        }
+        for(CompositeNotificationToken nestedComposite : nestedComposites) {
+            if(nestedComposite.contains(composite, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void removeAll(List<EventSource.NotificationToken> notificationTokens, Map<CompositeNotificationToken, Boolean> visited) {
+        if(visited.put(this, Boolean.TRUE) != null) { // a cycle created by concurrent additions is not followed twice
             return;
         }
-        isDisposing = true;
-        final int size = notificationTokens.size();
-        for (int i = size - 1; i >= 0; i--) {
-            EventSource.NotificationToken token = notificationTokens.remove(i);
-            token.stopListening();
+        EventSource.NotificationToken[] children;
+        synchronized(this) {
+            children = new EventSource.NotificationToken[size];
+            int i = 0;
+            for(Node node = head.prev; node != head; node = node.prev) {
+                node.isLinked = false;
+                children[i++] = node.notificationToken;
+            }
+            head.next = head;
+            head.prev = head;
+            size = 0;
+        }
+        for(EventSource.NotificationToken child : children) {
+            if(child instanceof CompositeNotificationToken) {
+                ((CompositeNotificationToken) child).removeAll(notificationTokens, visited);
+            } else {
+                notificationTokens.add(child);
+            }
+        }
+    }
+
+    private static final class Node implements EventSource.NotificationToken {
+        private final CompositeNotificationToken composite;
+
+        private final EventSource.NotificationToken notificationToken;
+
+        Node prev = this;
+
+        Node next = this;
+
+        boolean isLinked = false;
+
+        Node(CompositeNotificationToken composite, EventSource.NotificationToken notificationToken) {
+            this.composite = composite;
+            this.notificationToken = notificationToken;
+        }
+
+        @Override
+        public void stopListening() {
+            synchronized(composite) {
+                if(!isLinked) {
+                    return;
+                }
+                isLinked = false;
+                prev.next = next;
+                next.prev = prev;
+                prev = this;
+                next = this;
+                composite.size--;
+            }
+            notificationToken.stopListening();
         }
-        isDisposing = false;
     }
 }
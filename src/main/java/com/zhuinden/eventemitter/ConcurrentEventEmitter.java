@@ -0,0 +1,194 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The concurrent event emitter lets you register multiple observers, but enqueues events while there are no observers.
+ *
+ * Unlike {@link EventEmitter}, it is not confined to a single thread: events can be emitted, and observers can be registered or unregistered from any thread.
+ *
+ * Observers are called on the thread that emits the event (or on the thread that drains the pending events), so they must be thread-safe.
+ *
+ * If an observer throws while the pending events are drained, the remaining pending events are still drained, and the first exception
+ * is rethrown afterwards (with the later ones added as suppressed exceptions), to the thread that drained them.
+ *
+ * @param <E> the event type
+ */
+public class ConcurrentEventEmitter<E> implements EventSource<E> {
+    @SuppressWarnings("rawtypes")
+    private static final EventObserver[] EMPTY = new EventObserver[0];
+
+    @SuppressWarnings("unchecked")
+    private final AtomicReference<EventObserver<E>[]> observers = new AtomicReference<EventObserver<E>[]>(EMPTY);
+
+    private final MpscLinkedQueue<E> pendingEvents = new MpscLinkedQueue<>();
+
+    private final AtomicInteger drainCount = new AtomicInteger();
+
+    private volatile boolean isPaused = false;
+
+    /**
+     * @inheritDoc
+     */
+    @Nonnull
+    @Override
+    public final EventSource.NotificationToken startListening(@Nonnull final EventObserver<E> observer) {
+        //noinspection ConstantConditions
+        if(observer == null) {
+            throw new IllegalArgumentException("Observer should not be null!");
+        }
+
+        addObserver(observer);
+        drainPendingEvents();
+
+        return new EventSource.NotificationToken() {
+            private final AtomicBoolean isDisposed = new AtomicBoolean(false);
+
+            @Override
+            public final void stopListening() {
+                if(!isDisposed.compareAndSet(false, true)) {
+                    throw new IllegalStateException("This observer has already stopped listening!");
+                }
+
+                removeObserver(observer);
+            }
+        };
+    }
+
+    /**
+     * Emits events to all observers. If there are no observers, it is enqueued until there is at least one observer.
+     *
+     * Can be called from any thread.
+     *
+     * @param event the event
+     */
+    public final void emit(@Nonnull E event) {
+        //noinspection ConstantConditions
+        if(event == null) {
+            throw new IllegalArgumentException("Event should not be null!");
+        }
+
+        // the queue must be checked before the drain count, so that a drain that is in progress is always noticed
+        if(pendingEvents.isEmpty() && drainCount.get() == 0 && !isPaused) {
+            EventObserver<E>[] currentObservers = observers.get();
+            if(currentObservers.length > 0) {
+                notifyObservers(currentObservers, event);
+                return;
+            }
+        }
+
+        pendingEvents.offer(event);
+        drainPendingEvents();
+    }
+
+    /**
+     * When paused, the event emitter will not emit any events until it is no longer paused. Can be called from any thread.
+     *
+     * @param paused if event emitter should be paused
+     */
+    public final void setPaused(boolean paused) {
+        this.isPaused = paused;
+        if(!paused) {
+            drainPendingEvents();
+        }
+    }
+
+    private void drainPendingEvents() {
+        if(drainCount.getAndIncrement() != 0) {
+            return; // another thread is draining, and will notice the increment
+        }
+
+        RuntimeException exception = null;
+        int missed = 1;
+        while(true) {
+            while(!isPaused) {
+                EventObserver<E>[] currentObservers = observers.get();
+                if(currentObservers.length == 0) {
+                    break;
+                }
+                E event = pendingEvents.poll();
+                if(event == null) {
+                    break;
+                }
+                try {
+                    notifyObservers(currentObservers, event);
+                } catch(RuntimeException e) { // the drain must finish, the other threads rely on it to notice their events
+                    if(exception == null) {
+                        exception = e;
+                    } else {
+                        exception.addSuppressed(e);
+                    }
+                }
+            }
+
+            missed = drainCount.addAndGet(-missed);
+            if(missed == 0) {
+                if(exception != null) {
+                    throw exception;
+                }
+                return;
+            }
+        }
+    }
+
+    private void notifyObservers(EventObserver<E>[] currentObservers, E event) {
+        for(int i = currentObservers.length - 1; i >= 0; i--) {
+            currentObservers[i].onEventReceived(event);
+        }
+    }
+
+    private void addObserver(EventObserver<E> observer) {
+        while(true) {
+            EventObserver<E>[] current = observers.get();
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            EventObserver<E>[] next = new EventObserver[current.length + 1];
+            System.arraycopy(current, 0, next, 0, current.length);
+            next[current.length] = observer;
+            if(observers.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    private void removeObserver(EventObserver<E> observer) {
+        while(true) {
+            EventObserver<E>[] current = observers.get();
+            int index = -1;
+            for(int i = 0; i < current.length; i++) {
+                if(current[i] == observer) {
+                    index = i;
+                    break;
+                }
+            }
+            if(index == -1) {
+                return;
+            }
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            EventObserver<E>[] next = current.length == 1 ? EMPTY : new EventObserver[current.length - 1];
+            System.arraycopy(current, 0, next, 0, index);
+            System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+            if(observers.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+/**
+ * A consumable event can be marked as handled by an observer, so that the remaining observers do not receive it.
+ *
+ * The {@link EventEmitter} checks {@link #isConsumed()} before notifying each observer, and stops dispatching the event once it is consumed.
+ * Combined with observer priorities, a cheap high-priority observer can handle the event before the more expensive observers are called.
+ */
+public interface ConsumableEvent {
+    /**
+     * Returns if the event was consumed, and should not be received by the remaining observers.
+     *
+     * @return true if the event was consumed
+     */
+    boolean isConsumed();
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Emitter metrics that keep counters, the current pending event count, and dispatch time histograms per observer.
+ *
+ * The values can be read from any thread. Observers are tracked weakly, so the histogram of an observer that is no longer referenced
+ * is eventually released.
+ */
+public class CountingEmitterMetrics implements EmitterMetrics {
+    private final AtomicLong emittedEventCount = new AtomicLong();
+
+    private final AtomicLong enqueuedEventCount = new AtomicLong();
+
+    private final AtomicLong dispatchedEventCount = new AtomicLong();
+
+    private final AtomicLong pendingDispatchedEventCount = new AtomicLong();
+
+    private volatile int pendingEventCount = 0;
+
+    private final AtomicLong totalPauseNanos = new AtomicLong();
+
+    private final DispatchTimeHistogram dispatchTimeHistogram = new DispatchTimeHistogram();
+
+    private final Map<EventSource.EventObserver<?>, DispatchTimeHistogram> observerHistograms = Collections.synchronizedMap(new WeakHashMap<EventSource.EventObserver<?>, DispatchTimeHistogram>());
+
+    @Override
+    public void onEventEmitted() {
+        emittedEventCount.incrementAndGet();
+    }
+
+    @Override
+    public void onEventEnqueued(int pendingEventCount) {
+        enqueuedEventCount.incrementAndGet();
+        this.pendingEventCount = pendingEventCount;
+    }
+
+    @Override
+    public void onEventDispatched() {
+        dispatchedEventCount.incrementAndGet();
+    }
+
+    @Override
+    public void onPendingEventDispatched(int pendingEventCount) {
+        pendingDispatchedEventCount.incrementAndGet();
+        this.pendingEventCount = pendingEventCount;
+    }
+
+    @Override
+    public void onPauseEnded(long pauseDurationNanos) {
+        totalPauseNanos.addAndGet(pauseDurationNanos);
+    }
+
+    @Override
+    public void onObserverNotified(@Nonnull EventSource.EventObserver<?> observer, long dispatchTimeNanos) {
+        dispatchTimeHistogram.record(dispatchTimeNanos);
+
+        DispatchTimeHistogram histogram = observerHistograms.get(observer);
+        if(histogram == null) {
+            histogram = new DispatchTimeHistogram();
+            observerHistograms.put(observer, histogram);
+        }
+        histogram.record(dispatchTimeNanos);
+    }
+
+    /**
+     * Returns the number of emitted events.
+     *
+     * @return the emitted event count
+     */
+    public long getEmittedEventCount() {
+        return emittedEventCount.get();
+    }
+
+    /**
+     * Returns the number of events that were enqueued instead of being dispatched directly.
+     *
+     * @return the enqueued event count
+     */
+    public long getEnqueuedEventCount() {
+        return enqueuedEventCount.get();
+    }
+
+    /**
+     * Returns the number of events that were dispatched directly, without being enqueued.
+     *
+     * @return the dispatched event count
+     */
+    public long getDispatchedEventCount() {
+        return dispatchedEventCount.get();
+    }
+
+    /**
+     * Returns the number of enqueued events that were dispatched later.
+     *
+     * @return the pending dispatched event count
+     */
+    public long getPendingDispatchedEventCount() {
+        return pendingDispatchedEventCount.get();
+    }
+
+    /**
+     * Returns the last reported number of pending events.
+     *
+     * @return the pending event count
+     */
+    public int getPendingEventCount() {
+        return pendingEventCount;
+    }
+
+    /**
+     * Returns the total time the emitter was paused, in nanoseconds.
+     *
+     * @return the total pause duration
+     */
+    public long getTotalPauseNanos() {
+        return totalPauseNanos.get();
+    }
+
+    /**
+     * Returns the dispatch time histogram of all observers.
+     *
+     * @return the histogram
+     */
+    @Nonnull
+    public DispatchTimeHistogram getDispatchTimeHistogram() {
+        return dispatchTimeHistogram;
+    }
+
+    /**
+     * Returns the dispatch time histogram of the given observer.
+     *
+     * @param observer the observer
+     * @return the histogram, or null if the observer has not received any events
+     */
+    @Nullable
+    public DispatchTimeHistogram getDispatchTimeHistogram(@Nonnull EventSource.EventObserver<?> observer) {
+        return observerHistograms.get(observer);
+    }
+}
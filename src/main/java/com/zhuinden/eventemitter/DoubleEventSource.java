@@ -0,0 +1,46 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A double event source represents something that can be observed, and emits double events without boxing.
+ *
+ * A {@link EventSource.NotificationToken} can be used to unregister.
+ */
+public interface DoubleEventSource {
+    /**
+     * The double event observer can receive events emitted by the {@link DoubleEventSource}.
+     */
+    interface DoubleEventObserver {
+        /**
+         * Called when an event is received.
+         *
+         * @param event the event
+         */
+        void onEventReceived(double event);
+    }
+
+    /**
+     * Register to and start listening to the event source for events.
+     *
+     * @param eventObserver the observer
+     * @return the notification token, used to unregister the observer.
+     */
+    @Nonnull
+    EventSource.NotificationToken startListening(@Nonnull DoubleEventObserver eventObserver);
+}
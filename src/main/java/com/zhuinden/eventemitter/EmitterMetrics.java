@@ -0,0 +1,67 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The emitter metrics receive callbacks about what an {@link EventEmitter} is doing.
+ *
+ * Metrics are optional, and if they are not set, they are not measured at all. The callbacks are called synchronously on the thread of
+ * the emitter, so they should be cheap.
+ *
+ * See {@link CountingEmitterMetrics} for an implementation that keeps counters and dispatch time histograms.
+ */
+public interface EmitterMetrics {
+    /**
+     * Called when an event is emitted, before it is either dispatched or enqueued.
+     */
+    void onEventEmitted();
+
+    /**
+     * Called when an emitted event is enqueued, because there are no observers, or because the emitter is paused.
+     *
+     * @param pendingEventCount the number of pending events after the event was enqueued
+     */
+    void onEventEnqueued(int pendingEventCount);
+
+    /**
+     * Called when an emitted event is dispatched to the observers directly, without being enqueued.
+     */
+    void onEventDispatched();
+
+    /**
+     * Called when a pending event is removed from the pending event queue to be dispatched to the observers.
+     *
+     * @param pendingEventCount the number of pending events after the event was removed
+     */
+    void onPendingEventDispatched(int pendingEventCount);
+
+    /**
+     * Called when the emitter is no longer paused.
+     *
+     * @param pauseDurationNanos how long the emitter was paused, in nanoseconds
+     */
+    void onPauseEnded(long pauseDurationNanos);
+
+    /**
+     * Called when an observer has processed an event (or a batch of events).
+     *
+     * @param observer           the observer
+     * @param dispatchTimeNanos how long the observer took, in nanoseconds
+     */
+    void onObserverNotified(@Nonnull EventSource.EventObserver<?> observer, long dispatchTimeNanos);
+}
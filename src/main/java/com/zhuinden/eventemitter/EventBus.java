@@ -0,0 +1,171 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The event bus routes events to the observers that are registered for the class of the event, or for any of its superclasses or interfaces.
+ *
+ * Each registered event type has its own {@link EventEmitter}. The emitters that an event class is routed to are resolved once per
+ * concrete class, and cached until an event type gains its first observer or loses its last observer, so emitting an event costs a
+ * single map lookup.
+ *
+ * Unlike {@link EventEmitter}, the event bus does not enqueue events that have no observers.
+ *
+ * You can only emit events and listen for events and unregister observers on the thread where you created the event bus.
+ */
+public class EventBus implements EventSource<Object> {
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final EventEmitter<Object>[] EMPTY = new EventEmitter[0];
+
+    private final long threadId = Thread.currentThread().getId();
+
+    private final Map<Class<?>, EventEmitter<Object>> emitters = new HashMap<>();
+
+    private final Map<Class<?>, EventEmitter<Object>[]> dispatchTables = new HashMap<>();
+
+    /**
+     * Register to and start listening to all events.
+     *
+     * @param observer the observer
+     * @return the notification token, used to unregister the observer.
+     */
+    @Nonnull
+    @Override
+    public final NotificationToken startListening(@Nonnull EventObserver<Object> observer) {
+        return startListening(Object.class, observer);
+    }
+
+    /**
+     * Register to and start listening to the events that are instances of the given type.
+     *
+     * @param eventType the event type
+     * @param observer  the observer
+     * @param <T>       the event type
+     * @return the notification token, used to unregister the observer.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public final <T> NotificationToken startListening(@Nonnull final Class<T> eventType, @Nonnull EventObserver<? super T> observer) {
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You should register observers only on the thread where the event bus was created");
+        }
+
+        //noinspection ConstantConditions
+        if(eventType == null) {
+            throw new IllegalArgumentException("Event type should not be null!");
+        }
+
+        //noinspection ConstantConditions
+        if(observer == null) {
+            throw new IllegalArgumentException("Observer should not be null!");
+        }
+
+        EventEmitter<Object> emitter = emitters.get(eventType);
+        if(emitter == null) {
+            emitter = new EventEmitter<>();
+            emitters.put(eventType, emitter);
+            dispatchTables.clear();
+        }
+
+        // the emitter only ever receives instances of T
+        final EventEmitter<Object> eventEmitter = emitter;
+        final NotificationToken notificationToken = eventEmitter.startListening((EventObserver<Object>) observer);
+
+        return new NotificationToken() {
+            @Override
+            public void stopListening() {
+                notificationToken.stopListening();
+
+                if(eventEmitter.getObserverCount() == 0 && emitters.get(eventType) == eventEmitter) {
+                    emitters.remove(eventType);
+                    dispatchTables.clear();
+                }
+            }
+        };
+    }
+
+    /**
+     * Emits the event to all observers registered for its class, or for any of its superclasses or interfaces.
+     *
+     * The observers of the most specific type are notified first.
+     *
+     * @param event the event
+     */
+    public final void emit(@Nonnull Object event) {
+        //noinspection ConstantConditions
+        if(event == null) {
+            throw new IllegalArgumentException("Event should not be null!");
+        }
+
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You can only emit events on the thread where the event bus was created");
+        }
+
+        EventEmitter<Object>[] dispatchTable = dispatchTables.get(event.getClass());
+        if(dispatchTable == null) {
+            dispatchTable = resolveDispatchTable(event.getClass());
+            dispatchTables.put(event.getClass(), dispatchTable);
+        }
+
+        for(EventEmitter<Object> emitter : dispatchTable) {
+            if(emitter.getObserverCount() > 0) { // the emitter might have lost its observers during this dispatch
+                emitter.emit(event);
+            }
+        }
+    }
+
+    private EventEmitter<Object>[] resolveDispatchTable(Class<?> eventClass) {
+        List<EventEmitter<Object>> dispatchTable = new ArrayList<>();
+        for(Class<?> type : getTypeHierarchy(eventClass)) {
+            EventEmitter<Object> emitter = emitters.get(type);
+            if(emitter != null) {
+                dispatchTable.add(emitter);
+            }
+        }
+        return dispatchTable.isEmpty() ? EMPTY : dispatchTable.toArray(EMPTY);
+    }
+
+    private static Set<Class<?>> getTypeHierarchy(Class<?> eventClass) {
+        Set<Class<?>> types = new LinkedHashSet<>();
+        ArrayDeque<Class<?>> queue = new ArrayDeque<>();
+        queue.add(eventClass);
+        while(!queue.isEmpty()) {
+            Class<?> type = queue.poll();
+            if(!types.add(type)) {
+                continue;
+            }
+            Class<?> superclass = type.getSuperclass();
+            if(superclass != null) {
+                queue.add(superclass);
+            }
+            Collections.addAll(queue, type.getInterfaces());
+        }
+        types.remove(Object.class);
+        types.add(Object.class); // Object is the least specific
+        return types;
+    }
+}
@@ -16,31 +16,335 @@
 package com.zhuinden.eventemitter;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
-import com.zhuinden.commandqueue.CommandQueue;
-
-import java.util.LinkedList;
+import java.io.File;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The event emitter lets you register multiple observers, but enqueues events while there are no observers.
  *
+ * By default, the pending event queue is unbounded. A bounded pending event queue can be configured using {@link EventEmitter.Builder}.
+ *
+ * Observers can be registered with an {@link EventFilter}, or indexed by a key, so that they only receive the events they are interested in.
+ *
+ * Observers can be registered with a priority, so that they are notified before the observers with a lower priority. When the event is a
+ * {@link ConsumableEvent}, the dispatch stops once an observer consumed it.
+ *
  * @param <E> the event type
  */
 public class EventEmitter<E> implements EventSource<E> {
-    private final long threadId = Thread.currentThread().getId();
+    @SuppressWarnings("rawtypes")
+    private static final ObserverIndex[] EMPTY_INDEXES = new ObserverIndex[0];
 
-    private CommandQueue<E> commandQueue = new CommandQueue<>();
+    /**
+     * The priority of the observers that are registered without a priority.
+     */
+    public static final int DEFAULT_PRIORITY = 0;
 
-    private final CommandQueue.Receiver<E> notifyObservers = new CommandQueue.Receiver<E>() {
-        @Override
-        public void receiveCommand(@Nonnull E command) {
-            for(int i = observers.size() - 1; i >= 0; i--) {
-                observers.get(i).onEventReceived(command);
+    /**
+     * The builder can be used to configure an {@link EventEmitter}.
+     *
+     * @param <E> the event type
+     */
+    public static class Builder<E> {
+        private int capacity = PendingEventQueue.UNBOUNDED;
+
+        private OverflowPolicy overflowPolicy = OverflowPolicy.THROW;
+
+        @Nullable
+        private KeySelector<? super E, ?> keySelector = null;
+
+        @Nullable
+        private KeySelector<? super E, ?> conflationKeySelector = null;
+
+        @Nullable
+        private EventMerger<E> eventMerger = null;
+
+        @Nullable
+        private EmitterMetrics metrics = null;
+
+        @Nullable
+        private File durableDirectory = null;
+
+        @Nullable
+        private EventSerializer<E> serializer = null;
+
+        private int segmentSize = MappedEventQueue.DEFAULT_SEGMENT_SIZE;
+
+        private boolean isTrampolined = false;
+
+        /**
+         * Sets the maximum number of events that can be enqueued while there are no observers, or while the emitter is paused.
+         *
+         * By default, the pending event queue is unbounded.
+         *
+         * @param capacity the capacity
+         * @return the builder
+         */
+        @Nonnull
+        public Builder<E> setCapacity(int capacity) {
+            if(capacity <= 0) {
+                throw new IllegalArgumentException("Capacity should be positive!");
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets what should happen when an event is enqueued while the pending event queue is full.
+         *
+         * By default, an {@link IllegalStateException} is thrown.
+         *
+         * @param overflowPolicy the overflow policy
+         * @return the builder
+         */
+        @Nonnull
+        public Builder<E> setOverflowPolicy(@Nonnull OverflowPolicy overflowPolicy) {
+            //noinspection ConstantConditions
+            if(overflowPolicy == null) {
+                throw new IllegalArgumentException("Overflow policy should not be null!");
+            }
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the key selector, used by {@link OverflowPolicy#COALESCE_BY_KEY}.
+         *
+         * @param keySelector the key selector
+         * @return the builder
+         */
+        @Nonnull
+        public Builder<E> setKeySelector(@Nonnull KeySelector<? super E, ?> keySelector) {
+            //noinspection ConstantConditions
+            if(keySelector == null) {
+                throw new IllegalArgumentException("Key selector should not be null!");
+            }
+            this.keySelector = keySelector;
+            return this;
+        }
+
+        /**
+         * Enables conflation of the pending events: only the newest pending event is kept for each key, at the position where the first
+         * pending event with that key arrived.
+         *
+         * This is useful when the events are state snapshots, where only the latest value matters. The number of pending events is
+         * then bounded by the number of distinct keys.
+         *
+         * @param keySelector the key selector
+         * @return the builder
+         */
+        @Nonnull
+        public Builder<E> setConflation(@Nonnull KeySelector<? super E, ?> keySelector) {
+            //noinspection ConstantConditions
+            if(keySelector == null) {
+                throw new IllegalArgumentException("Key selector should not be null!");
+            }
+            this.conflationKeySelector = keySelector;
+            this.eventMerger = null;
+            return this;
+        }
+
+        /**
+         * Enables conflation of the pending events: when an event is emitted while there is a pending event with the same key, the two
+         * events are merged, and the merged event replaces the pending event.
+         *
+         * @param keySelector the key selector
+         * @param eventMerger the event merger
+         * @return the builder
+         */
+        @Nonnull
+        public Builder<E> setConflation(@Nonnull KeySelector<? super E, ?> keySelector, @Nonnull EventMerger<E> eventMerger) {
+            //noinspection ConstantConditions
+            if(keySelector == null) {
+                throw new IllegalArgumentException("Key selector should not be null!");
+            }
+            //noinspection ConstantConditions
+            if(eventMerger == null) {
+                throw new IllegalArgumentException("Event merger should not be null!");
+            }
+            this.conflationKeySelector = keySelector;
+            this.eventMerger = eventMerger;
+            return this;
+        }
+
+        /**
+         * Sets the metrics that receive callbacks about what the emitter is doing.
+         *
+         * By default, no metrics are measured.
+         *
+         * @param metrics the metrics
+         * @return the builder
+         */
+        @Nonnull
+        public Builder<E> setMetrics(@Nullable EmitterMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Stores the pending events in memory-mapped segment files in the directory, instead of on the heap.
+         *
+         * The pending events are restored when an emitter is built with the same directory, so they survive a restart of the process.
+         * The segment files are not forced to the storage device, so the events survive a crash of the process, but not a crash of the
+         * operating system or a power loss.
+         * They are emitted when an observer is registered, or when the emitter is no longer paused. The size of the queue is limited by
+         * the disk, not the heap. Drained segment files are deleted.
+         *
+         * The directory should be used by only one emitter at a time. A durable pending event queue can't be combined with conflation
+         * or with {@link OverflowPolicy#COALESCE_BY_KEY}.
+         *
+         * If an event can't be deserialized, the exception is thrown to the caller that emits the pending events, and the event is
+         * dropped, so the events after it are emitted by the next call.
+         *
+         * @param directory  the directory of the segment files
+         * @param serializer the serializer of the events
+         * @return the builder
+         */
+        @Nonnull
+        public Builder<E> setDurablePendingQueue(@Nonnull File directory, @Nonnull EventSerializer<E> serializer) {
+            return setDurablePendingQueue(directory, serializer, MappedEventQueue.DEFAULT_SEGMENT_SIZE);
+        }
+
+        /**
+         * Stores the pending events in memory-mapped segment files in the directory, instead of on the heap.
+         *
+         * @param directory   the directory of the segment files
+         * @param serializer  the serializer of the events
+         * @param segmentSize the size of a segment file in bytes. Larger events are stored in a segment of their own.
+         * @return the builder
+         * @see #setDurablePendingQueue(File, EventSerializer)
+         */
+        @Nonnull
+        public Builder<E> setDurablePendingQueue(@Nonnull File directory, @Nonnull EventSerializer<E> serializer, int segmentSize) {
+            //noinspection ConstantConditions
+            if(directory == null) {
+                throw new IllegalArgumentException("Directory should not be null!");
+            }
+            //noinspection ConstantConditions
+            if(serializer == null) {
+                throw new IllegalArgumentException("Serializer should not be null!");
+            }
+            if(segmentSize <= MappedEventQueue.HEADER_SIZE) {
+                throw new IllegalArgumentException("Segment size should be larger than " + MappedEventQueue.HEADER_SIZE + "!");
             }
+            this.durableDirectory = directory;
+            this.serializer = serializer;
+            this.segmentSize = segmentSize;
+            return this;
         }
-    };
 
-    private final LinkedList<EventObserver<E>> observers = new LinkedList<>();
+        /**
+         * Enables trampolined dispatch: events emitted by an observer while an event is being dispatched are appended to a queue, and
+         * dispatched after the current dispatch pass, instead of being dispatched recursively.
+         *
+         * This keeps the stack depth constant for cascades of events, and every observer receives the events in the same, breadth-first
+         * order. The queue is reused, so nested events do not allocate.
+         *
+         * If an observer throws, the exception is propagated to the top-level emit, and the rest of the cascade is dispatched before the
+         * next emitted event.
+         *
+         * By default, nested events are dispatched recursively.
+         *
+         * @param trampolined if nested events should be dispatched after the current dispatch pass
+         * @return the builder
+         */
+        @Nonnull
+        public Builder<E> setTrampolined(boolean trampolined) {
+            this.isTrampolined = trampolined;
+            return this;
+        }
+
+        /**
+         * Creates the event emitter. The emitter is confined to the thread where this method is called.
+         *
+         * @return the event emitter
+         */
+        @Nonnull
+        public EventEmitter<E> build() {
+            if(overflowPolicy == OverflowPolicy.COALESCE_BY_KEY && keySelector == null) {
+                throw new IllegalStateException("The COALESCE_BY_KEY overflow policy requires a key selector!");
+            }
+            EventQueue<E> pendingEvents;
+            if(durableDirectory != null) {
+                if(conflationKeySelector != null || overflowPolicy == OverflowPolicy.COALESCE_BY_KEY) {
+                    throw new IllegalStateException("A durable pending event queue can't be combined with conflation or COALESCE_BY_KEY!");
+                }
+                //noinspection ConstantConditions
+                pendingEvents = new MappedEventQueue<>(durableDirectory, serializer, segmentSize, capacity, overflowPolicy);
+            } else {
+                PendingEventQueue<E> pendingEventQueue = new PendingEventQueue<>(capacity, overflowPolicy, keySelector);
+                if(conflationKeySelector != null) {
+                    pendingEventQueue.setConflation(conflationKeySelector, eventMerger);
+                }
+                pendingEvents = pendingEventQueue;
+            }
+            EventEmitter<E> eventEmitter = new EventEmitter<>(pendingEvents, isTrampolined);
+            eventEmitter.setMetrics(metrics);
+            return eventEmitter;
+        }
+    }
+
+    private final long threadId = Thread.currentThread().getId();
+
+    private final int traceId = EventTracer.ENABLED ? EventTracer.nextEmitterId() : 0;
+
+    private final EventQueue<E> pendingEvents;
+
+    private boolean isPaused = false;
+
+    private boolean isPauseMeasured = false;
+
+    private long pausedAtNanos = 0L;
+
+    @Nullable
+    private EmitterMetrics metrics = null;
+
+    private final ObserverRegistry<EventObserver<E>> observers = new ObserverRegistry<>();
+
+    private ObserverLane<E>[] lanes; // sorted by descending priority, always contains the lane of the default priority
+
+    private int prioritizedObserverCount = 0;
+
+    @SuppressWarnings("unchecked")
+    private ObserverIndex<E>[] indexes = EMPTY_INDEXES;
+
+    private int indexedObserverCount = 0;
+
+    @Nullable
+    private ReferenceQueue<Object> clearedObservers = null;
+
+    @Nullable
+    private final PendingEventQueue<E> nestedEvents;
+
+    private boolean isDispatching = false;
+
+    private long purgedObserverCount = 0L;
+
+    /**
+     * Creates an event emitter with an unbounded pending event queue.
+     */
+    public EventEmitter() {
+        this(new PendingEventQueue<E>(), false);
+    }
+
+    private EventEmitter(EventQueue<E> pendingEvents, boolean isTrampolined) {
+        this.pendingEvents = pendingEvents;
+        this.nestedEvents = isTrampolined ? new PendingEventQueue<E>() : null;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ObserverLane<E>[] lanes = new ObserverLane[]{new ObserverLane<>(DEFAULT_PRIORITY, observers)};
+        this.lanes = lanes;
+    }
 
     /**
      * @inheritDoc
@@ -48,6 +352,30 @@ public class EventEmitter<E> implements EventSource<E> {
     @Nonnull
     @Override
     public final EventSource.NotificationToken startListening(@Nonnull final EventObserver<E> observer) {
+        EventSource.NotificationToken notificationToken = registerObserver(observer);
+        onObserverAdded();
+        return notificationToken;
+    }
+
+    /**
+     * Register to and start listening to the event source for events with the given priority.
+     *
+     * Observers with a higher priority are notified before observers with a lower priority, observers with the same priority are notified
+     * in reverse registration order. Observers registered without a priority have the {@link #DEFAULT_PRIORITY}. Indexed observers are
+     * notified after all prioritized observers.
+     *
+     * The dispatch order is kept sorted when the observer is registered, so emitting an event does not sort the observers.
+     *
+     * @param observer the observer
+     * @param priority the priority
+     * @return the notification token, used to unregister the observer.
+     */
+    @Nonnull
+    public final EventSource.NotificationToken startListening(@Nonnull EventObserver<E> observer, int priority) {
+        if(priority == DEFAULT_PRIORITY) {
+            return startListening(observer);
+        }
+
         if(threadId != Thread.currentThread().getId()) {
             throw new IllegalStateException("You should register observers only on the thread where the emitter was created");
         }
@@ -57,38 +385,193 @@ public class EventEmitter<E> implements EventSource<E> {
             throw new IllegalArgumentException("Observer should not be null!");
         }
 
-        observers.add(observer);
-        if(observers.size() == 1) {
-            commandQueue.setReceiver(notifyObservers);
+        if(clearedObservers != null) {
+            purgeClearedObservers();
         }
 
-        return new EventSource.NotificationToken() {
-            private boolean isDisposed = false;
+        ObserverLane<E> lane = getOrCreateLane(priority);
+        ObserverRegistry.Entry<EventObserver<E>> entry = lane.registry.add(observer);
+        prioritizedObserverCount++;
+        onObserverAdded();
+        return new ObserverToken(lane.registry, entry, lane, null, null);
+    }
 
-            @Override
-            public final void stopListening() {
-                if(threadId != Thread.currentThread().getId()) {
-                    throw new IllegalStateException("You should unregister observers only on the thread where the emitter was created");
-                }
+    /**
+     * Register to and start listening to the event source for events, without keeping the observer strongly reachable.
+     *
+     * Once the observer is garbage collected, it is removed from the emitter the next time an event is emitted, or an observer is
+     * registered, even if its notification token was never used to stop listening. Until then, the events are not received by anyone.
+     *
+     * The observer must be strongly reachable from its owner for as long as it should receive events.
+     *
+     * @param observer the observer
+     * @return the notification token, used to unregister the observer.
+     */
+    @Nonnull
+    public final EventSource.NotificationToken startListeningWeakly(@Nonnull EventObserver<E> observer) {
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You should register observers only on the thread where the emitter was created");
+        }
 
-                if(isDisposed) {
-                    throw new IllegalStateException("This observer has already stopped listening!");
-                }
+        //noinspection ConstantConditions
+        if(observer == null) {
+            throw new IllegalArgumentException("Observer should not be null!");
+        }
+
+        ReferenceQueue<Object> clearedObservers = this.clearedObservers;
+        if(clearedObservers == null) {
+            clearedObservers = new ReferenceQueue<>();
+            this.clearedObservers = clearedObservers;
+        }
 
-                isDisposed = true;
+        WeakObserverReference<E> reference = new WeakObserverReference<>(observer, clearedObservers);
+        reference.entry = observers.add(observer instanceof BatchEventObserver ? new WeakBatchEventObserver<>(reference) : new WeakEventObserver<>(reference));
+        onObserverAdded();
+        return new ObserverToken(observers, reference.entry, null, null, null);
+    }
 
-                observers.remove(observer);
-                if(observers.size() == 0) {
-                    commandQueue.detachReceiver();
-                }
+    /**
+     * Returns the number of observers registered with {@link #startListeningWeakly(EventObserver)} that were removed because they were garbage collected.
+     *
+     * @return the purged observer count
+     */
+    public final long getPurgedObserverCount() {
+        return purgedObserverCount;
+    }
+
+    /**
+     * Registers the observer without emitting the pending events, so that the observer has its token before it receives any event, and
+     * can stop listening while the pending events are emitted by {@link #dispatchPendingEvents()}.
+     *
+     * This is meant for adapters that bridge the emitter to another stream abstraction with backpressure (like the {@code FlowAdapters}
+     * of the {@code event-emitter-flow} artifact). Other observers should use {@link #startListening(EventObserver)}.
+     *
+     * @param observer the observer
+     * @return the notification token, used to unregister the observer.
+     */
+    @Nonnull
+    public final EventSource.NotificationToken registerObserver(@Nonnull EventObserver<E> observer) {
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You should register observers only on the thread where the emitter was created");
+        }
+
+        //noinspection ConstantConditions
+        if(observer == null) {
+            throw new IllegalArgumentException("Observer should not be null!");
+        }
+
+        if(clearedObservers != null) {
+            purgeClearedObservers();
+        }
+
+        return new ObserverToken(observers, observers.add(observer), null, null, null);
+    }
+
+    /**
+     * Emits the pending events while there are observers, and the emitter is not paused.
+     *
+     * Only needed after {@link #registerObserver(EventObserver)}, as the pending events are emitted whenever an observer starts listening,
+     * or the emitter is no longer paused.
+     */
+    public final void dispatchPendingEvents() {
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You can only emit events on the thread where the emitter was created");
+        }
+
+        emitPendingEvents();
+    }
+
+    /**
+     * Register to and start listening to the event source for the events accepted by the filter.
+     *
+     * @param observer the observer
+     * @param filter   the filter
+     * @return the notification token, used to unregister the observer.
+     */
+    @Nonnull
+    public final EventSource.NotificationToken startListening(@Nonnull EventObserver<E> observer, @Nonnull EventFilter<? super E> filter) {
+        //noinspection ConstantConditions
+        if(observer == null) {
+            throw new IllegalArgumentException("Observer should not be null!");
+        }
+
+        //noinspection ConstantConditions
+        if(filter == null) {
+            throw new IllegalArgumentException("Filter should not be null!");
+        }
+
+        return startListening(new FilteredEventObserver<>(observer, filter));
+    }
+
+    /**
+     * Register to and start listening to the event source for the events whose key equals the given key.
+     *
+     * The observers are indexed by their key, so emitting an event only notifies the observers registered for its key, without calling
+     * the others. Indexed observers are notified after the observers that are not indexed.
+     *
+     * The same key selector instance should be used for each observer that is indexed by the same kind of key, as a separate index is
+     * kept for each key selector instance.
+     *
+     * @param keySelector the key selector
+     * @param key         the key
+     * @param observer    the observer
+     * @param <K>         the key type
+     * @return the notification token, used to unregister the observer.
+     */
+    @Nonnull
+    public final <K> EventSource.NotificationToken startListening(@Nonnull KeySelector<? super E, K> keySelector, @Nonnull K key, @Nonnull EventObserver<E> observer) {
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You should register observers only on the thread where the emitter was created");
+        }
+
+        //noinspection ConstantConditions
+        if(keySelector == null) {
+            throw new IllegalArgumentException("Key selector should not be null!");
+        }
+
+        //noinspection ConstantConditions
+        if(key == null) {
+            throw new IllegalArgumentException("Key should not be null!");
+        }
+
+        //noinspection ConstantConditions
+        if(observer == null) {
+            throw new IllegalArgumentException("Observer should not be null!");
+        }
+
+        ObserverIndex<E> index = null;
+        for(ObserverIndex<E> observerIndex : indexes) {
+            if(observerIndex.keySelector == keySelector) {
+                index = observerIndex;
+                break;
             }
-        };
+        }
+        if(index == null) {
+            index = new ObserverIndex<>(keySelector);
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            ObserverIndex<E>[] newIndexes = new ObserverIndex[indexes.length + 1];
+            System.arraycopy(indexes, 0, newIndexes, 0, indexes.length);
+            newIndexes[indexes.length] = index;
+            indexes = newIndexes;
+        }
+
+        ObserverRegistry<EventObserver<E>> registry = index.registries.get(key);
+        if(registry == null) {
+            registry = new ObserverRegistry<>();
+            index.registries.put(key, registry);
+        }
+
+        ObserverRegistry.Entry<EventObserver<E>> entry = registry.add(observer);
+        indexedObserverCount++;
+        onObserverAdded();
+        return new ObserverToken(registry, entry, null, index, key);
     }
 
     /**
      * Emits events to all observers. If there are no observers, it is enqueued until there is at least one observer.
      *
      * @param event the event
+     * @throws IllegalStateException if the pending event queue is full, and the overflow policy is {@link OverflowPolicy#THROW}
      */
     public final void emit(@Nonnull E event) {
         //noinspection ConstantConditions
@@ -100,7 +583,67 @@ public class EventEmitter<E> implements EventSource<E> {
             throw new IllegalStateException("You can only emit events on the thread where the emitter was created");
         }
 
-        commandQueue.sendEvent(event);
+        if(clearedObservers != null) {
+            purgeClearedObservers();
+        }
+
+        final EmitterMetrics metrics = this.metrics;
+        if(metrics != null) {
+            metrics.onEventEmitted();
+        }
+
+        final long traceStartNanos = EventTracer.ENABLED ? System.nanoTime() : 0L;
+        if(isPaused || !hasObservers()) {
+            pendingEvents.offer(event);
+            if(metrics != null) {
+                metrics.onEventEnqueued(pendingEvents.size());
+            }
+            if(EventTracer.ENABLED) {
+                EventTracer.recordEmit(EventTracer.KIND_QUEUED, traceId, event, traceStartNanos, System.nanoTime());
+            }
+        } else {
+            if(metrics != null) {
+                metrics.onEventDispatched();
+            }
+            dispatch(event);
+            if(EventTracer.ENABLED) {
+                EventTracer.recordEmit(getTraceKind(), traceId, event, traceStartNanos, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Emits multiple events to all observers in a single dispatch pass. If there are no observers, the events are enqueued until there is at least one observer.
+     *
+     * A {@link BatchEventObserver} receives all events in a single call, other observers (including filtered and indexed observers) receive the events one by one.
+     *
+     * @param events the events
+     * @throws IllegalStateException if the pending event queue is full, and the overflow policy is {@link OverflowPolicy#THROW}
+     */
+    public final void emitAll(@Nonnull Collection<? extends E> events) {
+        //noinspection ConstantConditions
+        if(events == null) {
+            throw new IllegalArgumentException("Events should not be null!");
+        }
+
+        emitBatch(new ArrayList<E>(events));
+    }
+
+    /**
+     * Emits multiple events to all observers in a single dispatch pass. If there are no observers, the events are enqueued until there is at least one observer.
+     *
+     * A {@link BatchEventObserver} receives all events in a single call, other observers (including filtered and indexed observers) receive the events one by one.
+     *
+     * @param events the events
+     * @throws IllegalStateException if the pending event queue is full, and the overflow policy is {@link OverflowPolicy#THROW}
+     */
+    public final void emitAll(@Nonnull E[] events) {
+        //noinspection ConstantConditions
+        if(events == null) {
+            throw new IllegalArgumentException("Events should not be null!");
+        }
+
+        emitBatch(new ArrayList<E>(Arrays.asList(events)));
     }
 
     /**
@@ -109,6 +652,581 @@ public class EventEmitter<E> implements EventSource<E> {
      * @param paused if event emitter should be paused
      */
     public final void setPaused(boolean paused) {
-        commandQueue.setPaused(paused);
+        final EmitterMetrics metrics = this.metrics;
+        if(paused && !isPaused) {
+            isPauseMeasured = metrics != null;
+            if(isPauseMeasured) {
+                pausedAtNanos = System.nanoTime();
+            }
+        } else if(!paused && isPaused && isPauseMeasured && metrics != null) {
+            metrics.onPauseEnded(System.nanoTime() - pausedAtNanos);
+        }
+
+        this.isPaused = paused;
+        if(!paused) {
+            emitPendingEvents();
+        }
+    }
+
+    /**
+     * Sets the metrics that receive callbacks about what the emitter is doing. When the metrics are null, nothing is measured.
+     *
+     * @param metrics the metrics
+     */
+    public final void setMetrics(@Nullable EmitterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the number of events that are enqueued, waiting for an observer or for the emitter to be no longer paused.
+     *
+     * @return the pending event count
+     */
+    public final int getPendingEventCount() {
+        return pendingEvents.size();
+    }
+
+    /**
+     * Returns the number of events that were dropped or coalesced because the pending event queue was full.
+     *
+     * @return the dropped event count
+     */
+    public final long getDroppedEventCount() {
+        return pendingEvents.getDroppedCount();
+    }
+
+    /**
+     * Returns the number of registered observers.
+     *
+     * @return the observer count
+     */
+    final int getObserverCount() {
+        return observers.getObserverCount() + prioritizedObserverCount + indexedObserverCount;
+    }
+
+    private boolean hasObservers() {
+        return !observers.isEmpty() || prioritizedObserverCount > 0 || indexedObserverCount > 0;
+    }
+
+    private void onObserverAdded() {
+        if(getObserverCount() == 1) {
+            emitPendingEvents();
+        }
+    }
+
+    private void emitBatch(List<E> events) {
+        for(int i = 0, size = events.size(); i < size; i++) {
+            if(events.get(i) == null) {
+                throw new IllegalArgumentException("Event should not be null!");
+            }
+        }
+
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You can only emit events on the thread where the emitter was created");
+        }
+
+        if(events.isEmpty()) {
+            return;
+        }
+
+        if(clearedObservers != null) {
+            purgeClearedObservers();
+        }
+
+        final EmitterMetrics metrics = this.metrics;
+        final int size = events.size();
+        if(metrics != null) {
+            for(int i = 0; i < size; i++) {
+                metrics.onEventEmitted();
+            }
+        }
+
+        final long traceStartNanos = EventTracer.ENABLED ? System.nanoTime() : 0L;
+        if(isPaused || !hasObservers()) {
+            pendingEvents.offerAll(events);
+            if(metrics != null) {
+                for(int i = 0; i < size; i++) {
+                    metrics.onEventEnqueued(pendingEvents.size());
+                }
+            }
+            if(EventTracer.ENABLED) {
+                EventTracer.recordEmit(EventTracer.KIND_QUEUED, traceId, events.get(0), traceStartNanos, System.nanoTime());
+            }
+        } else {
+            if(metrics != null) {
+                for(int i = 0; i < size; i++) {
+                    metrics.onEventDispatched();
+                }
+            }
+            dispatch(Collections.unmodifiableList(events));
+            if(EventTracer.ENABLED) {
+                EventTracer.recordEmit(getTraceKind(), traceId, events.get(0), traceStartNanos, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Returns the trace kind of the event that was just dispatched, which is queued if it was only appended to the nested events of a
+     * trampolined dispatch.
+     */
+    private byte getTraceKind() {
+        return nestedEvents != null && isDispatching ? EventTracer.KIND_QUEUED : EventTracer.KIND_DIRECT;
+    }
+
+    private void emitPendingEvents() {
+        while(!isPaused && hasObservers() && !pendingEvents.isEmpty()) {
+            E event = pendingEvents.poll();
+            final EmitterMetrics metrics = this.metrics;
+            if(metrics != null) {
+                metrics.onPendingEventDispatched(pendingEvents.size());
+            }
+            final long traceStartNanos = EventTracer.ENABLED ? System.nanoTime() : 0L;
+            //noinspection ConstantConditions
+            dispatch(event);
+            if(EventTracer.ENABLED) {
+                //noinspection ConstantConditions
+                EventTracer.recordEmit(EventTracer.KIND_PENDING, traceId, event, traceStartNanos, System.nanoTime());
+            }
+        }
+    }
+
+    private void dispatch(E event) {
+        final PendingEventQueue<E> nestedEvents = this.nestedEvents;
+        if(nestedEvents == null) {
+            notifyObservers(event);
+        } else if(isDispatching) {
+            nestedEvents.offer(event);
+        } else {
+            isDispatching = true;
+            try {
+                if(nestedEvents.isEmpty()) {
+                    notifyObservers(event);
+                } else {
+                    nestedEvents.offer(event); // the rest of a cascade where an observer threw is dispatched first
+                }
+                dispatchNestedEvents(nestedEvents);
+            } finally {
+                isDispatching = false;
+            }
+        }
+    }
+
+    private void dispatch(List<E> events) {
+        final PendingEventQueue<E> nestedEvents = this.nestedEvents;
+        if(nestedEvents == null) {
+            notifyObservers(events);
+        } else if(isDispatching) {
+            nestedEvents.offerAll(events);
+        } else {
+            isDispatching = true;
+            try {
+                if(nestedEvents.isEmpty()) {
+                    notifyObservers(events);
+                } else {
+                    nestedEvents.offerAll(events); // the rest of a cascade where an observer threw is dispatched first
+                }
+                dispatchNestedEvents(nestedEvents);
+            } finally {
+                isDispatching = false;
+            }
+        }
+    }
+
+    private void dispatchNestedEvents(PendingEventQueue<E> nestedEvents) {
+        for(E event = nestedEvents.poll(); event != null; event = nestedEvents.poll()) {
+            if(isPaused || !hasObservers()) { // paused, or the observers stopped listening during the cascade
+                pendingEvents.offer(event);
+                final EmitterMetrics metrics = this.metrics;
+                if(metrics != null) {
+                    metrics.onEventEnqueued(pendingEvents.size());
+                }
+            } else {
+                notifyObservers(event);
+            }
+        }
+    }
+
+    private void notifyObservers(E event) {
+        final EmitterMetrics metrics = this.metrics;
+        final ConsumableEvent consumableEvent = event instanceof ConsumableEvent ? (ConsumableEvent) event : null;
+        final ObserverLane<E>[] lanes = this.lanes;
+        for(ObserverLane<E> lane : lanes) {
+            if(!notifyObservers(lane.registry, event, consumableEvent, metrics)) {
+                return;
+            }
+        }
+        notifyIndexedObservers(event, consumableEvent, metrics);
+    }
+
+    private void notifyIndexedObservers(E event, @Nullable ConsumableEvent consumableEvent, @Nullable EmitterMetrics metrics) {
+        final ObserverIndex<E>[] indexes = this.indexes;
+        for(ObserverIndex<E> index : indexes) {
+            ObserverRegistry<EventObserver<E>> registry = index.registries.get(index.keySelector.getKey(event));
+            if(registry != null && !notifyObservers(registry, event, consumableEvent, metrics)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Notifies the observers of the registry, and returns false if the event was consumed.
+     */
+    private boolean notifyObservers(ObserverRegistry<EventObserver<E>> observers, E event, @Nullable ConsumableEvent consumableEvent, @Nullable EmitterMetrics metrics) {
+        observers.beginDispatch();
+        try {
+            ObserverRegistry.Entry<EventObserver<E>>[] slots = observers.getSlots();
+            for(int i = observers.getSlotCount() - 1; i >= 0; i--) {
+                ObserverRegistry.Entry<EventObserver<E>> entry = slots[i];
+                if(entry != null && entry.isActive) {
+                    if(consumableEvent != null && consumableEvent.isConsumed()) {
+                        return false;
+                    }
+                    if(metrics == null && !EventTracer.ENABLED) {
+                        entry.observer.onEventReceived(event);
+                    } else {
+                        long startNanos = System.nanoTime();
+                        entry.observer.onEventReceived(event);
+                        long endNanos = System.nanoTime();
+                        onObserverNotified(entry.observer, event, metrics, startNanos, endNanos);
+                    }
+                }
+            }
+        } finally {
+            observers.endDispatch();
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void notifyObservers(List<E> events) {
+        final int size = events.size();
+        final EmitterMetrics metrics = this.metrics;
+        final ObserverLane<E>[] lanes = this.lanes;
+        for(ObserverLane<E> lane : lanes) {
+            final ObserverRegistry<EventObserver<E>> observers = lane.registry;
+            observers.beginDispatch();
+            try {
+                ObserverRegistry.Entry<EventObserver<E>>[] slots = observers.getSlots();
+                for(int i = observers.getSlotCount() - 1; i >= 0; i--) {
+                    ObserverRegistry.Entry<EventObserver<E>> entry = slots[i];
+                    if(entry != null && entry.isActive) {
+                        if(entry.observer instanceof BatchEventObserver) {
+                            List<E> unconsumedEvents = getUnconsumedEvents(events);
+                            if(unconsumedEvents.isEmpty()) {
+                                continue;
+                            }
+                            if(metrics == null && !EventTracer.ENABLED) {
+                                ((BatchEventObserver<E>) entry.observer).onEventsReceived(unconsumedEvents);
+                            } else {
+                                long startNanos = System.nanoTime();
+                                ((BatchEventObserver<E>) entry.observer).onEventsReceived(unconsumedEvents);
+                                onBatchObserverNotified(entry.observer, unconsumedEvents, metrics, startNanos, System.nanoTime());
+                            }
+                        } else {
+                            for(int j = 0; j < size && entry.isActive; j++) {
+                                E event = events.get(j);
+                                if(isConsumed(event)) {
+                                    continue;
+                                }
+                                if(metrics == null && !EventTracer.ENABLED) {
+                                    entry.observer.onEventReceived(event);
+                                } else {
+                                    long startNanos = System.nanoTime();
+                                    entry.observer.onEventReceived(event);
+                                    onObserverNotified(entry.observer, event, metrics, startNanos, System.nanoTime());
+                                }
+                            }
+                        }
+                    }
+                }
+            } finally {
+                observers.endDispatch();
+            }
+        }
+
+        if(indexes.length > 0) {
+            for(int j = 0; j < size; j++) {
+                E event = events.get(j);
+                if(!isConsumed(event)) {
+                    notifyIndexedObservers(event, event instanceof ConsumableEvent ? (ConsumableEvent) event : null, metrics);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports the notification to the metrics and the tracer, with the observer that was registered, not the wrapper of a filtered or weak registration.
+     */
+    private void onObserverNotified(EventObserver<E> registeredObserver, E event, @Nullable EmitterMetrics metrics, long startNanos, long endNanos) {
+        EventObserver<E> observer = unwrap(registeredObserver);
+        if(observer == null) {
+            return; // a weak observer that was garbage collected, it was not notified
+        }
+        if(metrics != null) {
+            metrics.onObserverNotified(observer, endNanos - startNanos);
+        }
+        if(EventTracer.ENABLED) {
+            EventTracer.recordNotify(traceId, event, observer, startNanos, endNanos);
+        }
+    }
+
+    /**
+     * Reports a single notification of a batch observer to the metrics, and a trace record for each event of the batch.
+     */
+    private void onBatchObserverNotified(EventObserver<E> registeredObserver, List<E> events, @Nullable EmitterMetrics metrics, long startNanos, long endNanos) {
+        EventObserver<E> observer = unwrap(registeredObserver);
+        if(observer == null) {
+            return;
+        }
+        if(metrics != null) {
+            metrics.onObserverNotified(observer, endNanos - startNanos);
+        }
+        if(EventTracer.ENABLED) {
+            for(int i = 0, size = events.size(); i < size; i++) {
+                EventTracer.recordNotify(traceId, events.get(i), observer, startNanos, endNanos);
+            }
+        }
+    }
+
+    @Nullable
+    private static <E> EventObserver<E> unwrap(EventObserver<E> observer) {
+        while(true) {
+            if(observer instanceof FilteredEventObserver) {
+                observer = ((FilteredEventObserver<E>) observer).observer;
+            } else if(observer instanceof WeakEventObserver) {
+                observer = ((WeakEventObserver<E>) observer).reference.get();
+            } else {
+                return observer;
+            }
+        }
+    }
+
+    /**
+     * Returns the events that are not consumed yet, or the events themselves if none of them is consumed.
+     */
+    private static <E> List<E> getUnconsumedEvents(List<E> events) {
+        for(int i = 0, size = events.size(); i < size; i++) {
+            if(isConsumed(events.get(i))) {
+                List<E> unconsumedEvents = new ArrayList<>(events.subList(0, i));
+                for(int j = i + 1; j < size; j++) {
+                    E event = events.get(j);
+                    if(!isConsumed(event)) {
+                        unconsumedEvents.add(event);
+                    }
+                }
+                return Collections.unmodifiableList(unconsumedEvents);
+            }
+        }
+        return events;
+    }
+
+    private static boolean isConsumed(Object event) {
+        return event instanceof ConsumableEvent && ((ConsumableEvent) event).isConsumed();
+    }
+
+    private ObserverLane<E> getOrCreateLane(int priority) {
+        final ObserverLane<E>[] lanes = this.lanes;
+        int low = 0;
+        int high = lanes.length;
+        while(low < high) { // finds the first lane whose priority is not higher
+            int middle = (low + high) >>> 1;
+            if(lanes[middle].priority > priority) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if(low < lanes.length && lanes[low].priority == priority) {
+            return lanes[low];
+        }
+        ObserverLane<E> lane = new ObserverLane<>(priority, new ObserverRegistry<EventObserver<E>>());
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ObserverLane<E>[] newLanes = new ObserverLane[lanes.length + 1];
+        System.arraycopy(lanes, 0, newLanes, 0, low);
+        newLanes[low] = lane;
+        System.arraycopy(lanes, low, newLanes, low + 1, lanes.length - low);
+        this.lanes = newLanes; // copied, so that a dispatch in progress is not affected
+        return lane;
+    }
+
+    private void removePrioritizedObserver(ObserverLane<E> lane) {
+        prioritizedObserverCount--;
+        if(!lane.registry.isEmpty()) {
+            return;
+        }
+        final ObserverLane<E>[] lanes = this.lanes;
+        for(int i = 0; i < lanes.length; i++) {
+            if(lanes[i] == lane) {
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                ObserverLane<E>[] newLanes = new ObserverLane[lanes.length - 1];
+                System.arraycopy(lanes, 0, newLanes, 0, i);
+                System.arraycopy(lanes, i + 1, newLanes, i, lanes.length - i - 1);
+                this.lanes = newLanes;
+                return;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void purgeClearedObservers() {
+        //noinspection ConstantConditions
+        for(Reference<?> reference = clearedObservers.poll(); reference != null; reference = clearedObservers.poll()) {
+            ObserverRegistry.Entry<EventObserver<E>> entry = ((WeakObserverReference<E>) reference).entry;
+            if(entry != null && entry.isActive) {
+                observers.remove(entry);
+                purgedObserverCount++;
+            }
+        }
+    }
+
+    private void removeIndexedObserver(ObserverIndex<E> index, Object key, ObserverRegistry<EventObserver<E>> registry) {
+        indexedObserverCount--;
+        if(!registry.isEmpty() || index.registries.get(key) != registry) {
+            return;
+        }
+        index.registries.remove(key);
+        if(!index.registries.isEmpty()) {
+            return;
+        }
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ObserverIndex<E>[] newIndexes = indexes.length == 1 ? EMPTY_INDEXES : new ObserverIndex[indexes.length - 1];
+        int target = 0;
+        for(ObserverIndex<E> observerIndex : indexes) {
+            if(observerIndex != index && target < newIndexes.length) {
+                newIndexes[target++] = observerIndex;
+            }
+        }
+        indexes = newIndexes;
+    }
+
+    private final class ObserverToken implements ObserverRegistry.Token {
+        private final ObserverRegistry<EventObserver<E>> registry;
+
+        private final ObserverRegistry.Entry<EventObserver<E>> entry;
+
+        @Nullable
+        private final ObserverLane<E> lane;
+
+        @Nullable
+        private final ObserverIndex<E> index;
+
+        @Nullable
+        private final Object key;
+
+        private boolean isDisposed = false;
+
+        ObserverToken(ObserverRegistry<EventObserver<E>> registry, ObserverRegistry.Entry<EventObserver<E>> entry, @Nullable ObserverLane<E> lane, @Nullable ObserverIndex<E> index, @Nullable Object key) {
+            this.registry = registry;
+            this.entry = entry;
+            this.lane = lane;
+            this.index = index;
+            this.key = key;
+        }
+
+        @Override
+        public final void stopListening() {
+            if(threadId != Thread.currentThread().getId()) {
+                throw new IllegalStateException("You should unregister observers only on the thread where the emitter was created");
+            }
+
+            if(isDisposed) {
+                throw new IllegalStateException("This observer has already stopped listening!");
+            }
+
+            isDisposed = true;
+
+            registry.remove(entry);
+            if(lane != null) {
+                removePrioritizedObserver(lane);
+            }
+            if(index != null) {
+                //noinspection ConstantConditions
+                removeIndexedObserver(index, key, registry);
+            }
+        }
+
+        @Nullable
+        @Override
+        public ObserverRegistry<?> getRegistry() {
+            return threadId == Thread.currentThread().getId() ? registry : null;
+        }
+    }
+
+    private static final class ObserverLane<E> {
+        final int priority;
+
+        final ObserverRegistry<EventObserver<E>> registry;
+
+        ObserverLane(int priority, ObserverRegistry<EventObserver<E>> registry) {
+            this.priority = priority;
+            this.registry = registry;
+        }
+    }
+
+    private static final class ObserverIndex<E> {
+        final KeySelector<? super E, ?> keySelector;
+
+        final Map<Object, ObserverRegistry<EventObserver<E>>> registries = new HashMap<>();
+
+        ObserverIndex(KeySelector<? super E, ?> keySelector) {
+            this.keySelector = keySelector;
+        }
+    }
+
+    private static final class WeakObserverReference<E> extends WeakReference<EventObserver<E>> {
+        @Nullable
+        ObserverRegistry.Entry<EventObserver<E>> entry;
+
+        WeakObserverReference(EventObserver<E> observer, ReferenceQueue<Object> clearedObservers) {
+            super(observer, clearedObservers);
+        }
+    }
+
+    private static class WeakEventObserver<E> implements EventObserver<E> {
+        final WeakObserverReference<E> reference;
+
+        WeakEventObserver(WeakObserverReference<E> reference) {
+            this.reference = reference;
+        }
+
+        @Override
+        public void onEventReceived(@Nonnull E event) {
+            EventObserver<E> observer = reference.get();
+            if(observer != null) {
+                observer.onEventReceived(event);
+            }
+        }
+    }
+
+    private static final class WeakBatchEventObserver<E> extends WeakEventObserver<E> implements BatchEventObserver<E> {
+        WeakBatchEventObserver(WeakObserverReference<E> reference) {
+            super(reference);
+        }
+
+        @Override
+        public void onEventsReceived(@Nonnull List<E> events) {
+            EventObserver<E> observer = reference.get();
+            if(observer != null) {
+                ((BatchEventObserver<E>) observer).onEventsReceived(events);
+            }
+        }
+    }
+
+    private static final class FilteredEventObserver<E> implements EventObserver<E> {
+        private final EventObserver<E> observer;
+
+        private final EventFilter<? super E> filter;
+
+        FilteredEventObserver(EventObserver<E> observer, EventFilter<? super E> filter) {
+            this.observer = observer;
+            this.filter = filter;
+        }
+
+        @Override
+        public void onEventReceived(@Nonnull E event) {
+            if(filter.accept(event)) {
+                observer.onEventReceived(event);
+            }
+        }
     }
-}
\ No newline at end of file
+}
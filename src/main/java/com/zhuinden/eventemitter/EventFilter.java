@@ -0,0 +1,33 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The event filter decides if an observer should receive an event.
+ *
+ * @param <E> the event type
+ */
+public interface EventFilter<E> {
+    /**
+     * Returns if the event should be received by the observer.
+     *
+     * @param event the event
+     * @return true if the observer should receive the event
+     */
+    boolean accept(@Nonnull E event);
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The event merger combines a pending event with a newer event that has the same key.
+ *
+ * @param <E> the event type
+ */
+public interface EventMerger<E> {
+    /**
+     * Merges the pending event with the newer event.
+     *
+     * @param pendingEvent the event that is already pending
+     * @param newEvent     the newer event
+     * @return the merged event, which replaces the pending event
+     */
+    @Nonnull
+    E merge(@Nonnull E pendingEvent, @Nonnull E newEvent);
+}
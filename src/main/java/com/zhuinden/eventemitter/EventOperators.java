@@ -0,0 +1,411 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operators that limit how often the events of an {@link EventSource} are received.
+ *
+ * Each operator returns a new event source. Each observer of the returned event source registers its own observer to the original
+ * event source, and stopping listening unregisters it, and cancels its scheduled tasks.
+ *
+ * The time is measured, and the delayed events are delivered, by an {@link EventScheduler}. Events that are delivered by a scheduled
+ * task are received on the thread where the scheduler runs its tasks.
+ */
+public final class EventOperators {
+    private EventOperators() {
+    }
+
+    /**
+     * Returns an event source that receives the first event, then ignores the events until the window has elapsed.
+     *
+     * @param eventSource the event source
+     * @param window      the window
+     * @param timeUnit    the time unit of the window
+     * @param scheduler   the scheduler
+     * @param <E>         the event type
+     * @return the throttled event source
+     */
+    @Nonnull
+    public static <E> EventSource<E> throttleFirst(@Nonnull final EventSource<E> eventSource, long window, @Nonnull TimeUnit timeUnit, @Nonnull final EventScheduler scheduler) {
+        final long windowNanos = checkArguments(eventSource, window, timeUnit, scheduler);
+        return new OperatorEventSource<E, E>(eventSource) {
+            @Override
+            OperatorObserver<E> createObserver(EventObserver<E> observer) {
+                return new ThrottleFirstObserver<>(observer, scheduler, windowNanos);
+            }
+        };
+    }
+
+    /**
+     * Returns an event source that receives the latest event once no event was emitted for the timeout.
+     *
+     * @param eventSource the event source
+     * @param timeout     the timeout
+     * @param timeUnit    the time unit of the timeout
+     * @param scheduler   the scheduler
+     * @param <E>         the event type
+     * @return the debounced event source
+     */
+    @Nonnull
+    public static <E> EventSource<E> debounce(@Nonnull final EventSource<E> eventSource, long timeout, @Nonnull TimeUnit timeUnit, @Nonnull final EventScheduler scheduler) {
+        final long timeoutNanos = checkArguments(eventSource, timeout, timeUnit, scheduler);
+        return new OperatorEventSource<E, E>(eventSource) {
+            @Override
+            OperatorObserver<E> createObserver(EventObserver<E> observer) {
+                return new DebounceObserver<>(observer, scheduler, timeoutNanos);
+            }
+        };
+    }
+
+    /**
+     * Returns an event source that receives the latest event at the end of each interval, if an event was emitted during the interval.
+     *
+     * The intervals start when the observer is registered.
+     *
+     * @param eventSource the event source
+     * @param interval    the interval
+     * @param timeUnit    the time unit of the interval
+     * @param scheduler   the scheduler
+     * @param <E>         the event type
+     * @return the sampled event source
+     */
+    @Nonnull
+    public static <E> EventSource<E> sample(@Nonnull final EventSource<E> eventSource, long interval, @Nonnull TimeUnit timeUnit, @Nonnull final EventScheduler scheduler) {
+        final long intervalNanos = checkArguments(eventSource, interval, timeUnit, scheduler);
+        return new OperatorEventSource<E, E>(eventSource) {
+            @Override
+            OperatorObserver<E> createObserver(EventObserver<E> observer) {
+                return new SampleObserver<>(observer, scheduler, intervalNanos);
+            }
+        };
+    }
+
+    /**
+     * Returns an event source that receives the events emitted during a window as a single list, at the end of the window.
+     *
+     * A window starts with the first event that is emitted after the previous window. Empty windows are not received.
+     *
+     * @param eventSource the event source
+     * @param window      the window
+     * @param timeUnit    the time unit of the window
+     * @param scheduler   the scheduler
+     * @param <E>         the event type
+     * @return the buffered event source
+     */
+    @Nonnull
+    public static <E> EventSource<List<E>> bufferTime(@Nonnull final EventSource<E> eventSource, long window, @Nonnull TimeUnit timeUnit, @Nonnull final EventScheduler scheduler) {
+        final long windowNanos = checkArguments(eventSource, window, timeUnit, scheduler);
+        return new OperatorEventSource<E, List<E>>(eventSource) {
+            @Override
+            OperatorObserver<E> createObserver(EventObserver<List<E>> observer) {
+                return new BufferTimeObserver<>(observer, scheduler, windowNanos);
+            }
+        };
+    }
+
+    private static long checkArguments(EventSource<?> eventSource, long time, TimeUnit timeUnit, EventScheduler scheduler) {
+        //noinspection ConstantConditions
+        if(eventSource == null) {
+            throw new IllegalArgumentException("Event source should not be null!");
+        }
+        if(time <= 0) {
+            throw new IllegalArgumentException("Time should be positive!");
+        }
+        //noinspection ConstantConditions
+        if(timeUnit == null) {
+            throw new IllegalArgumentException("Time unit should not be null!");
+        }
+        //noinspection ConstantConditions
+        if(scheduler == null) {
+            throw new IllegalArgumentException("Scheduler should not be null!");
+        }
+        return timeUnit.toNanos(time);
+    }
+
+    private abstract static class OperatorEventSource<E, R> implements EventSource<R> {
+        private final EventSource<E> eventSource;
+
+        OperatorEventSource(EventSource<E> eventSource) {
+            this.eventSource = eventSource;
+        }
+
+        abstract OperatorObserver<E> createObserver(EventObserver<R> observer);
+
+        @Nonnull
+        @Override
+        public final NotificationToken startListening(@Nonnull EventObserver<R> observer) {
+            //noinspection ConstantConditions
+            if(observer == null) {
+                throw new IllegalArgumentException("Observer should not be null!");
+            }
+
+            final OperatorObserver<E> operatorObserver = createObserver(observer);
+            final NotificationToken notificationToken = eventSource.startListening(operatorObserver);
+
+            return new NotificationToken() {
+                @Override
+                public void stopListening() {
+                    notificationToken.stopListening();
+                    operatorObserver.stop();
+                }
+            };
+        }
+    }
+
+    private abstract static class OperatorObserver<E> implements EventSource.EventObserver<E> {
+        final EventScheduler scheduler;
+
+        final long timeNanos;
+
+        // guarded by this
+
+        boolean isStopped = false;
+
+        @Nullable
+        EventSource.NotificationToken scheduledTask = null;
+
+        OperatorObserver(EventScheduler scheduler, long timeNanos) {
+            this.scheduler = scheduler;
+            this.timeNanos = timeNanos;
+        }
+
+        /**
+         * Schedules the task to run after the delay. Must be called while holding the lock, so that the task can't run before it is stored.
+         */
+        final void schedule(Runnable task, long delayNanos) {
+            scheduledTask = scheduler.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        void stop() {
+            EventSource.NotificationToken scheduledTask;
+            synchronized(this) {
+                isStopped = true;
+                scheduledTask = this.scheduledTask;
+                this.scheduledTask = null;
+                onStopped();
+            }
+            if(scheduledTask != null) {
+                scheduledTask.stopListening();
+            }
+        }
+
+        /**
+         * Releases the held events. Called while holding the lock.
+         */
+        void onStopped() {
+        }
+    }
+
+    private static final class ThrottleFirstObserver<E> extends OperatorObserver<E> {
+        private final EventSource.EventObserver<E> observer;
+
+        private boolean hasEmitted = false;
+
+        private long emittedAtNanos = 0L;
+
+        ThrottleFirstObserver(EventSource.EventObserver<E> observer, EventScheduler scheduler, long windowNanos) {
+            super(scheduler, windowNanos);
+            this.observer = observer;
+        }
+
+        @Override
+        public void onEventReceived(@Nonnull E event) {
+            long now = scheduler.nanoTime();
+            synchronized(this) {
+                if(isStopped || (hasEmitted && now - emittedAtNanos < timeNanos)) {
+                    return;
+                }
+                hasEmitted = true;
+                emittedAtNanos = now;
+            }
+            observer.onEventReceived(event);
+        }
+    }
+
+    private static final class DebounceObserver<E> extends OperatorObserver<E> {
+        private final EventSource.EventObserver<E> observer;
+
+        @Nullable
+        private E latestEvent = null;
+
+        private long latestEventNanos = 0L;
+
+        private final Runnable timeoutTask = new Runnable() {
+            @Override
+            public void run() {
+                onTimeout();
+            }
+        };
+
+        DebounceObserver(EventSource.EventObserver<E> observer, EventScheduler scheduler, long timeoutNanos) {
+            super(scheduler, timeoutNanos);
+            this.observer = observer;
+        }
+
+        @Override
+        public void onEventReceived(@Nonnull E event) {
+            long now = scheduler.nanoTime();
+            synchronized(this) {
+                if(isStopped) {
+                    return;
+                }
+                latestEvent = event;
+                latestEventNanos = now;
+                if(scheduledTask == null) { // the task is not rescheduled for each event, it checks the time of the latest event when it runs
+                    schedule(timeoutTask, timeNanos);
+                }
+            }
+        }
+
+        private void onTimeout() {
+            E event;
+            synchronized(this) {
+                scheduledTask = null;
+                if(isStopped || latestEvent == null) {
+                    return;
+                }
+                long remainingNanos = latestEventNanos + timeNanos - scheduler.nanoTime();
+                if(remainingNanos > 0) {
+                    schedule(timeoutTask, remainingNanos);
+                    return;
+                }
+                event = latestEvent;
+                latestEvent = null;
+            }
+            observer.onEventReceived(event);
+        }
+
+        @Override
+        void onStopped() {
+            latestEvent = null;
+        }
+    }
+
+    private static final class SampleObserver<E> extends OperatorObserver<E> {
+        private final EventSource.EventObserver<E> observer;
+
+        private final long startNanos;
+
+        @Nullable
+        private E latestEvent = null;
+
+        private final Runnable sampleTask = new Runnable() {
+            @Override
+            public void run() {
+                onIntervalEnded();
+            }
+        };
+
+        SampleObserver(EventSource.EventObserver<E> observer, EventScheduler scheduler, long intervalNanos) {
+            super(scheduler, intervalNanos);
+            this.observer = observer;
+            this.startNanos = scheduler.nanoTime();
+        }
+
+        @Override
+        public void onEventReceived(@Nonnull E event) {
+            long now = scheduler.nanoTime();
+            synchronized(this) {
+                if(isStopped) {
+                    return;
+                }
+                latestEvent = event;
+                if(scheduledTask == null) { // nothing is scheduled while no events are emitted
+                    schedule(sampleTask, timeNanos - (now - startNanos) % timeNanos);
+                }
+            }
+        }
+
+        private void onIntervalEnded() {
+            E event;
+            synchronized(this) {
+                scheduledTask = null;
+                event = latestEvent;
+                latestEvent = null;
+                if(isStopped || event == null) {
+                    return;
+                }
+            }
+            observer.onEventReceived(event);
+        }
+
+        @Override
+        void onStopped() {
+            latestEvent = null;
+        }
+    }
+
+    private static final class BufferTimeObserver<E> extends OperatorObserver<E> {
+        private final EventSource.EventObserver<List<E>> observer;
+
+        @Nullable
+        private List<E> events = null;
+
+        private final Runnable windowTask = new Runnable() {
+            @Override
+            public void run() {
+                onWindowEnded();
+            }
+        };
+
+        BufferTimeObserver(EventSource.EventObserver<List<E>> observer, EventScheduler scheduler, long windowNanos) {
+            super(scheduler, windowNanos);
+            this.observer = observer;
+        }
+
+        @Override
+        public void onEventReceived(@Nonnull E event) {
+            synchronized(this) {
+                if(isStopped) {
+                    return;
+                }
+                if(events == null) {
+                    events = new ArrayList<>();
+                }
+                events.add(event);
+                if(scheduledTask == null) {
+                    schedule(windowTask, timeNanos);
+                }
+            }
+        }
+
+        private void onWindowEnded() {
+            List<E> events;
+            synchronized(this) {
+                scheduledTask = null;
+                events = this.events;
+                this.events = null;
+                if(isStopped || events == null) {
+                    return;
+                }
+            }
+            observer.onEventReceived(Collections.unmodifiableList(events));
+        }
+
+        @Override
+        void onStopped() {
+            events = null;
+        }
+    }
+}
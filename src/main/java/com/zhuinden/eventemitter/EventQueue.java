@@ -0,0 +1,67 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * A queue that holds the events that could not be emitted yet.
+ *
+ * Not thread-safe, it is confined to the thread of its owner.
+ *
+ * @param <E> the event type
+ */
+interface EventQueue<E> {
+    /**
+     * Adds the event to the end of the queue. If the queue is full, the overflow policy is applied.
+     *
+     * @param event the event
+     * @throws IllegalStateException if the queue is full, and the overflow policy is {@link OverflowPolicy#THROW}
+     */
+    void offer(@Nonnull E event);
+
+    /**
+     * Adds the events to the end of the queue. If the queue is full, the overflow policy is applied for each event.
+     *
+     * If the overflow policy is {@link OverflowPolicy#THROW}, either all events are added, or none of them.
+     *
+     * @param events the events
+     * @throws IllegalStateException if the events don't fit in the queue, and the overflow policy is {@link OverflowPolicy#THROW}
+     */
+    void offerAll(@Nonnull List<? extends E> events);
+
+    /**
+     * Removes the event at the head of the queue.
+     *
+     * @return the event, or null if the queue is empty
+     */
+    @Nullable
+    E poll();
+
+    boolean isEmpty();
+
+    int size();
+
+    /**
+     * Returns the number of events that were dropped or coalesced because the queue was full.
+     *
+     * @return the dropped event count
+     */
+    long getDroppedCount();
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The event scheduler runs tasks after a delay, and provides the time that the delays are measured in.
+ *
+ * It drives the time-based operators of {@link EventOperators}. Tests can use {@link VirtualTimeScheduler}.
+ */
+public interface EventScheduler extends Ticker {
+    /**
+     * Runs the task once the delay has elapsed.
+     *
+     * @param task     the task
+     * @param delay    the delay
+     * @param timeUnit the time unit of the delay
+     * @return the notification token, used to cancel the task if it has not run yet.
+     */
+    @Nonnull
+    EventSource.NotificationToken schedule(@Nonnull Runnable task, long delay, @Nonnull TimeUnit timeUnit);
+}
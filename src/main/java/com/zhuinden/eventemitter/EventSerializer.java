@@ -0,0 +1,43 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The event serializer converts events to bytes and back, so that they can be stored outside of the heap.
+ *
+ * @param <E> the event type
+ */
+public interface EventSerializer<E> {
+    /**
+     * Converts the event to bytes.
+     *
+     * @param event the event
+     * @return the bytes
+     */
+    @Nonnull
+    byte[] serialize(@Nonnull E event);
+
+    /**
+     * Converts the bytes back to the event.
+     *
+     * @param bytes the bytes
+     * @return the event
+     */
+    @Nonnull
+    E deserialize(@Nonnull byte[] bytes);
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The event tracer records what the {@link EventEmitter}s are doing, so that a slow cascade of events can be traced back to the emitter
+ * and the observer that caused it.
+ *
+ * Tracing is enabled by starting the JVM with {@code -Dcom.zhuinden.eventemitter.trace=true}. When it is not enabled, the checks in the
+ * emitters are constant, and are removed by the JIT compiler.
+ *
+ * Each thread records into its own preallocated ring buffer, which keeps the last records (by default 16384, configured by
+ * {@code -Dcom.zhuinden.eventemitter.trace.bufferSize}). Each record contains the emitter id, the event class, the observer identity,
+ * the start and end time in nanoseconds, and whether the event was dispatched directly, enqueued, or dispatched from the pending queue.
+ *
+ * The records can be dumped to a compact binary file with {@link #dump(File)}, or to a JSON file that can be opened in
+ * {@code chrome://tracing} with {@link #dumpChromeTrace(File)}. Records written while dumping might be missing from the dump. The
+ * buffers of terminated threads are released once they were dumped, or when a new thread starts recording.
+ */
+public final class EventTracer {
+    /**
+     * If tracing is enabled, set by the {@code com.zhuinden.eventemitter.trace} system property.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("com.zhuinden.eventemitter.trace");
+
+    static final int DEFAULT_BUFFER_SIZE = 16384;
+
+    static final byte KIND_DIRECT = 0;
+
+    static final byte KIND_QUEUED = 1;
+
+    static final byte KIND_PENDING = 2;
+
+    static final byte KIND_NOTIFY = 3;
+
+    private static final String[] KIND_NAMES = {"direct", "queued", "pending", "notify"};
+
+    static final int MAGIC = 0x45565452;
+
+    static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = Math.max(1, Integer.getInteger("com.zhuinden.eventemitter.trace.bufferSize", DEFAULT_BUFFER_SIZE));
+
+    private static final long ORIGIN_NANOS = System.nanoTime();
+
+    private static final AtomicInteger emitterIds = new AtomicInteger();
+
+    private static final List<TraceBuffer> buffers = new CopyOnWriteArrayList<>();
+
+    private static final ThreadLocal<TraceBuffer> threadBuffer = new ThreadLocal<TraceBuffer>() {
+        @Override
+        protected TraceBuffer initialValue() {
+            removeTerminatedThreads(); // so that a pool that replaces its threads does not keep the buffers of the old threads
+            TraceBuffer buffer = new TraceBuffer(Thread.currentThread(), BUFFER_SIZE);
+            buffers.add(buffer);
+            return buffer;
+        }
+    };
+
+    private EventTracer() {
+    }
+
+    /**
+     * Returns a new id for an emitter.
+     */
+    static int nextEmitterId() {
+        return emitterIds.incrementAndGet();
+    }
+
+    /**
+     * Records that an event was emitted, using one of {@link #KIND_DIRECT}, {@link #KIND_QUEUED} or {@link #KIND_PENDING}.
+     */
+    static void recordEmit(byte kind, int emitterId, @Nonnull Object event, long startNanos, long endNanos) {
+        threadBuffer.get().record(kind, emitterId, event.getClass(), null, startNanos, endNanos);
+    }
+
+    /**
+     * Records that an observer was notified.
+     */
+    static void recordNotify(int emitterId, @Nonnull Object event, @Nonnull Object observer, long startNanos, long endNanos) {
+        threadBuffer.get().record(KIND_NOTIFY, emitterId, event.getClass(), observer, startNanos, endNanos);
+    }
+
+    /**
+     * Removes the records of all threads.
+     */
+    public static void clear() {
+        for(TraceBuffer buffer : buffers) {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Writes the records of all threads to a compact binary file.
+     *
+     * The file starts with the magic number {@code 0x45565452} and the version, followed by the table of class names, then the records
+     * of each thread: the thread id and name, the record count, and for each record the kind, the emitter id, the index of the event class,
+     * the index of the observer class (-1 if there is no observer), the identity hash code of the observer, the start time and the duration
+     * in nanoseconds.
+     *
+     * @param file the file
+     * @throws IOException if the file could not be written
+     */
+    public static void dump(@Nonnull File file) throws IOException {
+        //noinspection ConstantConditions
+        if(file == null) {
+            throw new IllegalArgumentException("File should not be null!");
+        }
+
+        // the records are written in a single pass, so that the class table contains every class written by the records
+        Map<Class<?>, Integer> classIndices = new HashMap<>();
+        List<Class<?>> classes = new ArrayList<>();
+        TraceBuffer[] traceBuffers = buffers.toArray(new TraceBuffer[0]);
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordOutput = new DataOutputStream(records);
+        recordOutput.writeInt(traceBuffers.length);
+        for(TraceBuffer buffer : traceBuffers) {
+            long count = buffer.count;
+            long firstSequence = buffer.getFirstSequence(count);
+            recordOutput.writeLong(buffer.threadId);
+            recordOutput.writeUTF(buffer.threadName);
+            recordOutput.writeInt((int) (count - firstSequence));
+            for(long sequence = firstSequence; sequence < count; sequence++) {
+                int index = (int) (sequence % buffer.size);
+                recordOutput.writeByte(buffer.kinds[index]);
+                recordOutput.writeInt(buffer.emitterIds[index]);
+                recordOutput.writeInt(getClassIndex(classIndices, classes, buffer.eventClasses[index]));
+                recordOutput.writeInt(getClassIndex(classIndices, classes, buffer.observerClasses[index]));
+                recordOutput.writeInt(buffer.observerIds[index]);
+                recordOutput.writeLong(buffer.startNanos[index]);
+                recordOutput.writeLong(buffer.endNanos[index] - buffer.startNanos[index]);
+            }
+        }
+        recordOutput.flush();
+
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(classes.size());
+            for(Class<?> type : classes) {
+                output.writeUTF(type.getName());
+            }
+            records.writeTo(output);
+        } finally {
+            output.close();
+        }
+        removeTerminatedThreads();
+    }
+
+    /**
+     * Writes the records of all threads to a JSON file in the Chrome trace event format, which can be opened in {@code chrome://tracing}.
+     *
+     * @param file the file
+     * @throws IOException if the file could not be written
+     */
+    public static void dumpChromeTrace(@Nonnull File file) throws IOException {
+        //noinspection ConstantConditions
+        if(file == null) {
+            throw new IllegalArgumentException("File should not be null!");
+        }
+
+        Writer writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file)), Charset.forName("UTF-8"));
+        try {
+            writer.write("{\"traceEvents\":[");
+            boolean isFirst = true;
+            TraceBuffer[] traceBuffers = buffers.toArray(new TraceBuffer[0]);
+            for(TraceBuffer buffer : traceBuffers) {
+                long count = buffer.count;
+                for(long sequence = buffer.getFirstSequence(count); sequence < count; sequence++) {
+                    int index = (int) (sequence % buffer.size);
+                    Class<?> eventClass = buffer.eventClasses[index];
+                    Class<?> observerClass = buffer.observerClasses[index];
+                    byte kind = buffer.kinds[index];
+                    if(eventClass == null) {
+                        continue; // cleared while dumping
+                    }
+                    if(!isFirst) {
+                        writer.write(',');
+                    }
+                    isFirst = false;
+                    writer.write("{\"name\":\"");
+                    writeEscaped(writer, kind == KIND_NOTIFY && observerClass != null ? observerClass.getName() : eventClass.getName());
+                    writer.write("\",\"cat\":\"");
+                    writer.write(KIND_NAMES[kind]);
+                    writer.write("\",\"ph\":\"X\",\"ts\":");
+                    writer.write(toMicros(buffer.startNanos[index] - ORIGIN_NANOS));
+                    writer.write(",\"dur\":");
+                    writer.write(toMicros(buffer.endNanos[index] - buffer.startNanos[index]));
+                    writer.write(",\"pid\":1,\"tid\":");
+                    writer.write(Long.toString(buffer.threadId));
+                    writer.write(",\"args\":{\"emitter\":");
+                    writer.write(Integer.toString(buffer.emitterIds[index]));
+                    writer.write(",\"event\":\"");
+                    writeEscaped(writer, eventClass.getName());
+                    writer.write('"');
+                    if(observerClass != null) {
+                        writer.write(",\"observer\":\"");
+                        writeEscaped(writer, observerClass.getName() + "@" + Integer.toHexString(buffer.observerIds[index]));
+                        writer.write('"');
+                    }
+                    writer.write("}}");
+                }
+            }
+            for(TraceBuffer buffer : traceBuffers) {
+                writer.write(isFirst ? "" : ",");
+                isFirst = false;
+                writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":");
+                writer.write(Long.toString(buffer.threadId));
+                writer.write(",\"args\":{\"name\":\"");
+                writeEscaped(writer, buffer.threadName);
+                writer.write("\"}}");
+            }
+            writer.write("]}");
+        } finally {
+            writer.close();
+        }
+        removeTerminatedThreads();
+    }
+
+    private static int getClassIndex(Map<Class<?>, Integer> classIndices, List<Class<?>> classes, @Nullable Class<?> type) {
+        if(type == null) {
+            return -1;
+        }
+        Integer classIndex = classIndices.get(type);
+        if(classIndex == null) {
+            classIndex = classes.size();
+            classIndices.put(type, classIndex);
+            classes.add(type);
+        }
+        return classIndex;
+    }
+
+    private static void removeTerminatedThreads() {
+        for(TraceBuffer buffer : buffers) {
+            Thread thread = buffer.thread.get();
+            if(thread == null || !thread.isAlive()) {
+                buffers.remove(buffer);
+            }
+        }
+    }
+
+    private static String toMicros(long nanos) {
+        return nanos < 0L ? "0" : (nanos / 1000L) + "." + String.format("%03d", nanos % 1000L);
+    }
+
+    private static void writeEscaped(Writer writer, String value) throws IOException {
+        for(int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if(c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+    }
+
+    private static final class TraceBuffer {
+        final WeakReference<Thread> thread;
+
+        final long threadId;
+
+        final String threadName;
+
+        final int size;
+
+        final byte[] kinds;
+
+        final int[] emitterIds;
+
+        final Class<?>[] eventClasses;
+
+        final Class<?>[] observerClasses;
+
+        final int[] observerIds;
+
+        final long[] startNanos;
+
+        final long[] endNanos;
+
+        long count = 0L; // only written by the thread that owns the buffer
+
+        long clearedCount = 0L;
+
+        TraceBuffer(Thread thread, int size) {
+            this.thread = new WeakReference<>(thread);
+            this.threadId = thread.getId();
+            this.threadName = thread.getName();
+            this.size = size;
+            this.kinds = new byte[size];
+            this.emitterIds = new int[size];
+            this.eventClasses = new Class<?>[size];
+            this.observerClasses = new Class<?>[size];
+            this.observerIds = new int[size];
+            this.startNanos = new long[size];
+            this.endNanos = new long[size];
+        }
+
+        void record(byte kind, int emitterId, Class<?> eventClass, @Nullable Object observer, long startNanos, long endNanos) {
+            int index = (int) (count % size);
+            kinds[index] = kind;
+            emitterIds[index] = emitterId;
+            eventClasses[index] = eventClass;
+            observerClasses[index] = observer == null ? null : observer.getClass();
+            observerIds[index] = observer == null ? 0 : System.identityHashCode(observer);
+            this.startNanos[index] = startNanos;
+            this.endNanos[index] = endNanos;
+            count++;
+        }
+
+        long getFirstSequence(long count) {
+            return Math.min(count, Math.max(clearedCount, count - size)); // cleared after the count was read
+        }
+
+        void clear() {
+            clearedCount = count;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An event scheduler that runs the tasks on a {@link ScheduledExecutorService}, measuring time with {@link System#nanoTime()}.
+ *
+ * The tasks run on the threads of the executor, so the operators using this scheduler call their observers on those threads.
+ */
+public class ExecutorEventScheduler implements EventScheduler {
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Creates an event scheduler that runs the tasks on the executor.
+     *
+     * @param executor the executor
+     */
+    public ExecutorEventScheduler(@Nonnull ScheduledExecutorService executor) {
+        //noinspection ConstantConditions
+        if(executor == null) {
+            throw new IllegalArgumentException("Executor should not be null!");
+        }
+        this.executor = executor;
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Nonnull
+    @Override
+    public EventSource.NotificationToken schedule(@Nonnull Runnable task, long delay, @Nonnull TimeUnit timeUnit) {
+        //noinspection ConstantConditions
+        if(task == null) {
+            throw new IllegalArgumentException("Task should not be null!");
+        }
+        //noinspection ConstantConditions
+        if(timeUnit == null) {
+            throw new IllegalArgumentException("Time unit should not be null!");
+        }
+        final ScheduledFuture<?> future = executor.schedule(task, delay, timeUnit);
+        return new EventSource.NotificationToken() {
+            @Override
+            public void stopListening() {
+                future.cancel(false);
+            }
+        };
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The handoff event emitter lets a single producer thread emit events that are received by the observers on the thread where the
+ * emitter was created.
+ *
+ * The events are handed off through a lock-free single-producer single-consumer ring buffer. The owner thread drains the ring buffer in
+ * batches, and emits the events on an {@link EventEmitter}, so the pending events, pausing and observers behave the same way.
+ *
+ * How the owner thread waits for the events is decided by the {@link WakeStrategy}: it either calls {@link #awaitAndDrain()} in a loop
+ * (busy-spinning, yielding or parking while the ring buffer is empty), or the drain is executed by an event loop {@link Executor} that
+ * runs on the owner thread.
+ *
+ * Only one thread may emit events at a time. You can only drain events and listen for events and unregister observers on the thread
+ * where you created the emitter.
+ *
+ * @param <E> the event type
+ */
+public class HandoffEventEmitter<E> implements EventSource<E> {
+    /**
+     * The wake strategy decides how the owner thread waits for the events emitted by the producer thread.
+     */
+    public static abstract class WakeStrategy {
+        /**
+         * The owner thread busy-spins while the ring buffer is empty. It has the lowest latency, but it keeps a core busy.
+         */
+        public static final WakeStrategy BUSY_SPIN = new WakeStrategy(false) {
+            @Override
+            void signal(HandoffEventEmitter<?> emitter) {
+            }
+
+            @Override
+            void idle(HandoffEventEmitter<?> emitter) {
+            }
+        };
+
+        /**
+         * The owner thread yields while the ring buffer is empty.
+         */
+        public static final WakeStrategy YIELD = new WakeStrategy(false) {
+            @Override
+            void signal(HandoffEventEmitter<?> emitter) {
+            }
+
+            @Override
+            void idle(HandoffEventEmitter<?> emitter) {
+                Thread.yield();
+            }
+        };
+
+        /**
+         * The owner thread is parked while the ring buffer is empty, and the producer thread unparks it when it emits an event.
+         */
+        public static final WakeStrategy PARK = new WakeStrategy(true) {
+            @Override
+            void signal(HandoffEventEmitter<?> emitter) {
+                if(emitter.isOwnerParked) {
+                    LockSupport.unpark(emitter.ownerThread);
+                }
+            }
+
+            @Override
+            void idle(HandoffEventEmitter<?> emitter) {
+                emitter.isOwnerParked = true;
+                try {
+                    if(emitter.isEmpty()) { // checked after the flag is set, so the signal of a new event is not lost
+                        LockSupport.park(emitter);
+                    }
+                } finally {
+                    emitter.isOwnerParked = false;
+                }
+            }
+        };
+
+        /**
+         * Creates a wake strategy that executes the drain on the executor when the producer thread emits an event. The executor must
+         * run its tasks on the thread where the emitter was created, like the event loop of that thread.
+         *
+         * @param executor the executor
+         * @return the wake strategy
+         */
+        @Nonnull
+        public static WakeStrategy executor(@Nonnull final Executor executor) {
+            //noinspection ConstantConditions
+            if(executor == null) {
+                throw new IllegalArgumentException("Executor should not be null!");
+            }
+            return new WakeStrategy(true) {
+                @Override
+                void signal(HandoffEventEmitter<?> emitter) {
+                    if(!emitter.isDrainScheduled.get() && emitter.isDrainScheduled.compareAndSet(false, true)) {
+                        executor.execute(emitter.drainTask);
+                    }
+                }
+
+                @Override
+                void idle(HandoffEventEmitter<?> emitter) {
+                    Thread.yield();
+                }
+            };
+        }
+
+        final boolean isSignalling;
+
+        WakeStrategy(boolean isSignalling) {
+            this.isSignalling = isSignalling;
+        }
+
+        /**
+         * Called on the producer thread after an event is added to the ring buffer.
+         */
+        abstract void signal(HandoffEventEmitter<?> emitter);
+
+        /**
+         * Called on the owner thread while the ring buffer is empty.
+         */
+        abstract void idle(HandoffEventEmitter<?> emitter);
+    }
+
+    // the indices are far apart in the same array, so that the producer and the owner thread do not write the same cache line
+    private static final int PRODUCER_INDEX = 15;
+
+    private static final int PRODUCER_LIMIT = 16;
+
+    private static final int CONSUMER_INDEX = 31;
+
+    private static final int INDEX_ARRAY_LENGTH = 48;
+
+    private final long threadId = Thread.currentThread().getId();
+
+    private final Thread ownerThread = Thread.currentThread();
+
+    private final Object[] buffer;
+
+    private final int mask;
+
+    private final AtomicLongArray indices = new AtomicLongArray(INDEX_ARRAY_LENGTH);
+
+    private final WakeStrategy wakeStrategy;
+
+    private final EventEmitter<E> eventEmitter;
+
+    private volatile boolean isOwnerParked = false;
+
+    private final AtomicBoolean isDrainScheduled = new AtomicBoolean(false);
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            isDrainScheduled.set(false); // cleared before draining, so the events emitted during the drain schedule a new drain
+            drain();
+        }
+    };
+
+    private boolean isDraining = false;
+
+    /**
+     * Creates a handoff event emitter, where the events that are drained are emitted on an event emitter with an unbounded pending event queue.
+     *
+     * @param capacity     the capacity of the ring buffer, rounded up to a power of two
+     * @param wakeStrategy the wake strategy
+     */
+    public HandoffEventEmitter(int capacity, @Nonnull WakeStrategy wakeStrategy) {
+        this(capacity, wakeStrategy, new EventEmitter.Builder<E>());
+    }
+
+    /**
+     * Creates a handoff event emitter, where the events that are drained are emitted on the event emitter built by the builder.
+     *
+     * @param capacity     the capacity of the ring buffer, rounded up to a power of two
+     * @param wakeStrategy the wake strategy
+     * @param builder      the builder used to build the event emitter
+     */
+    public HandoffEventEmitter(int capacity, @Nonnull WakeStrategy wakeStrategy, @Nonnull EventEmitter.Builder<E> builder) {
+        if(capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity should be between 1 and " + (1 << 30) + "!");
+        }
+        //noinspection ConstantConditions
+        if(wakeStrategy == null) {
+            throw new IllegalArgumentException("Wake strategy should not be null!");
+        }
+        //noinspection ConstantConditions
+        if(builder == null) {
+            throw new IllegalArgumentException("Builder should not be null!");
+        }
+        int powerOfTwoCapacity = Integer.highestOneBit(capacity);
+        if(powerOfTwoCapacity < capacity) {
+            powerOfTwoCapacity <<= 1;
+        }
+        this.buffer = new Object[powerOfTwoCapacity];
+        this.mask = powerOfTwoCapacity - 1;
+        this.wakeStrategy = wakeStrategy;
+        this.eventEmitter = builder.build();
+        indices.set(PRODUCER_LIMIT, powerOfTwoCapacity);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Nonnull
+    @Override
+    public final NotificationToken startListening(@Nonnull EventObserver<E> observer) {
+        return eventEmitter.startListening(observer);
+    }
+
+    /**
+     * Hands off the event to the owner thread. If the ring buffer is full, it waits until the owner thread drains it.
+     *
+     * This method can be called from any thread, but only from one thread at a time.
+     *
+     * @param event the event
+     */
+    public final void emit(@Nonnull E event) {
+        while(!offer(event)) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Hands off the event to the owner thread, unless the ring buffer is full.
+     *
+     * This method can be called from any thread, but only from one thread at a time.
+     *
+     * @param event the event
+     * @return true if the event was added to the ring buffer, false if the ring buffer is full
+     */
+    public final boolean offer(@Nonnull E event) {
+        //noinspection ConstantConditions
+        if(event == null) {
+            throw new IllegalArgumentException("Event should not be null!");
+        }
+
+        final long producerIndex = indices.get(PRODUCER_INDEX);
+        if(producerIndex >= indices.get(PRODUCER_LIMIT)) {
+            final long producerLimit = indices.get(CONSUMER_INDEX) + buffer.length;
+            if(producerIndex >= producerLimit) {
+                return false;
+            }
+            indices.lazySet(PRODUCER_LIMIT, producerLimit);
+        }
+
+        buffer[(int) producerIndex & mask] = event;
+        if(wakeStrategy.isSignalling) {
+            indices.set(PRODUCER_INDEX, producerIndex + 1); // ordered before reading the state of the owner thread
+            wakeStrategy.signal(this);
+        } else {
+            indices.lazySet(PRODUCER_INDEX, producerIndex + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Emits the events that were handed off to the owner thread, without waiting for new events.
+     *
+     * Calling it from an observer while the events are being drained has no effect.
+     *
+     * @return the number of events that were drained
+     */
+    @SuppressWarnings("unchecked")
+    public final int drain() {
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You can only drain events on the thread where the emitter was created");
+        }
+
+        if(isDraining) {
+            return 0;
+        }
+
+        final long consumerIndex = indices.get(CONSUMER_INDEX);
+        final long producerIndex = indices.get(PRODUCER_INDEX);
+        long index = consumerIndex;
+        isDraining = true;
+        try {
+            while(index < producerIndex) {
+                final int offset = (int) index & mask;
+                final E event = (E) buffer[offset];
+                buffer[offset] = null;
+                index++;
+                eventEmitter.emit(event);
+            }
+        } finally {
+            isDraining = false;
+            indices.lazySet(CONSUMER_INDEX, index); // the slots of the whole batch are released at once
+        }
+        return (int) (index - consumerIndex);
+    }
+
+    /**
+     * Waits until events are handed off to the owner thread using the wake strategy, and emits them.
+     *
+     * @return the number of events that were drained
+     * @throws InterruptedException if the owner thread is interrupted while waiting
+     */
+    public final int awaitAndDrain() throws InterruptedException {
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You can only drain events on the thread where the emitter was created");
+        }
+
+        int drainedEventCount = drain();
+        while(drainedEventCount == 0) {
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            wakeStrategy.idle(this);
+            drainedEventCount = drain();
+        }
+        return drainedEventCount;
+    }
+
+    /**
+     * When paused, the drained events are enqueued until the emitter is no longer paused.
+     *
+     * @param paused if event emitter should be paused
+     */
+    public final void setPaused(boolean paused) {
+        eventEmitter.setPaused(paused);
+    }
+
+    /**
+     * Returns the number of drained events that are enqueued, waiting for an observer or for the emitter to be no longer paused.
+     *
+     * @return the pending event count
+     */
+    public final int getPendingEventCount() {
+        return eventEmitter.getPendingEventCount();
+    }
+
+    /**
+     * Returns the capacity of the ring buffer.
+     *
+     * @return the capacity
+     */
+    public final int getCapacity() {
+        return buffer.length;
+    }
+
+    private boolean isEmpty() {
+        return indices.get(CONSUMER_INDEX) == indices.get(PRODUCER_INDEX);
+    }
+}
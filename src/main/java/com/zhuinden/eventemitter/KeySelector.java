@@ -0,0 +1,35 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The key selector extracts a key from an event. Events with equal keys are considered to be about the same thing.
+ *
+ * @param <E> the event type
+ * @param <K> the key type
+ */
+public interface KeySelector<E, K> {
+    /**
+     * Returns the key of the event.
+     *
+     * @param event the event
+     * @return the key
+     */
+    @Nonnull
+    K getKey(@Nonnull E event);
+}
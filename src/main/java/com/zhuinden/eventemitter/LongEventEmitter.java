@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The long event emitter lets you register multiple observers, but enqueues events while there are no observers.
+ *
+ * It behaves the same way as an {@link EventEmitter}, but the events are not boxed, and the pending events are stored in a primitive array.
+ */
+public class LongEventEmitter extends PrimitiveEventEmitter<LongEventSource.LongEventObserver, long[]> implements LongEventSource {
+    public LongEventEmitter() {
+        super(new long[INITIAL_CAPACITY]);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Nonnull
+    @Override
+    public final EventSource.NotificationToken startListening(@Nonnull final LongEventObserver observer) {
+        return addObserver(observer);
+    }
+
+    /**
+     * Emits events to all observers. If there are no observers, it is enqueued until there is at least one observer.
+     *
+     * @param event the event
+     */
+    public final void emit(long event) {
+        if(shouldEnqueue()) {
+            int index = enqueue();
+            pendingEvents[index] = event;
+        } else {
+            notifyObservers(event);
+        }
+    }
+
+    @Override
+    final long[] createPendingEvents(int length) {
+        return new long[length];
+    }
+
+    @Override
+    final void emitPendingEvent(int index) {
+        notifyObservers(pendingEvents[index]);
+    }
+
+    private void notifyObservers(long event) {
+        observers.beginDispatch();
+        try {
+            ObserverRegistry.Entry<LongEventObserver>[] slots = observers.getSlots();
+            for(int i = observers.getSlotCount() - 1; i >= 0; i--) {
+                ObserverRegistry.Entry<LongEventObserver> entry = slots[i];
+                if(entry != null && entry.isActive) {
+                    entry.observer.onEventReceived(event);
+                }
+            }
+        } finally {
+            observers.endDispatch();
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A durable queue that holds the events that could not be emitted yet in memory-mapped segment files, outside of the heap.
+ *
+ * Each segment starts with a header that stores the read and write positions, followed by the records, each stored as its length and
+ * the serialized bytes. A record is only visible once the write position is updated, so a partially written record is never replayed.
+ * When a segment is full, a new segment is created. When a segment is drained, it is deleted, or if it is the last segment, it is reused.
+ *
+ * The pending events of the segments that exist in the directory are restored on creation, so the events survive a restart of the process.
+ * The segments are not forced to the storage device ({@link MappedByteBuffer#force()} would be a disk flush for each event), so the
+ * events survive a crash of the process, as the operating system still writes back the mapped pages, but not a crash of the operating
+ * system or a power loss.
+ * The directory should be used by only one queue at a time.
+ *
+ * A record is removed before it is deserialized, so if the serializer throws, or returns null, the exception is thrown to the caller of
+ * {@link #poll()}, and the record is lost, but the records after it are still polled.
+ *
+ * Not thread-safe, it is confined to the thread of its owner.
+ *
+ * @param <E> the event type
+ */
+final class MappedEventQueue<E> implements EventQueue<E> {
+    static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    static final int HEADER_SIZE = 16;
+
+    private static final int MAGIC = 0x45564551;
+
+    private static final int READ_POSITION_OFFSET = 4;
+
+    private static final int WRITE_POSITION_OFFSET = 8;
+
+    private static final int LENGTH_SIZE = 4;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final File directory;
+
+    private final EventSerializer<E> serializer;
+
+    private final int segmentSize;
+
+    private final int capacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+
+    private long nextSegmentId = 0L;
+
+    private int size = 0;
+
+    private long droppedCount = 0;
+
+    MappedEventQueue(@Nonnull File directory, @Nonnull EventSerializer<E> serializer, int segmentSize, int capacity, @Nonnull OverflowPolicy overflowPolicy) {
+        //noinspection ConstantConditions
+        if(directory == null) {
+            throw new IllegalArgumentException("Directory should not be null!");
+        }
+        //noinspection ConstantConditions
+        if(serializer == null) {
+            throw new IllegalArgumentException("Serializer should not be null!");
+        }
+        if(segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size should be larger than " + HEADER_SIZE + "!");
+        }
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be positive!");
+        }
+        //noinspection ConstantConditions
+        if(overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy should not be null!");
+        }
+        if(overflowPolicy == OverflowPolicy.COALESCE_BY_KEY) {
+            throw new IllegalArgumentException("The COALESCE_BY_KEY overflow policy is not supported for durable queues!");
+        }
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Could not create directory [" + directory + "]!");
+        }
+        this.directory = directory;
+        this.serializer = serializer;
+        this.segmentSize = segmentSize;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        restoreSegments();
+    }
+
+    @Override
+    public void offer(@Nonnull E event) {
+        if(size == capacity) {
+            switch(overflowPolicy) {
+                case DROP_NEWEST:
+                    droppedCount++;
+                    return;
+                case THROW:
+                    throw new IllegalStateException("The pending event queue is full (capacity: " + capacity + ")!");
+                case DROP_OLDEST:
+                default:
+                    skip();
+                    droppedCount++;
+                    break;
+            }
+        }
+
+        byte[] bytes = serializer.serialize(event);
+        //noinspection ConstantConditions
+        if(bytes == null) {
+            throw new IllegalArgumentException("Serialized event should not be null!");
+        }
+
+        int recordSize = LENGTH_SIZE + bytes.length;
+        Segment tail = segments.peekLast();
+        if(tail == null || tail.length - tail.writePosition < recordSize) {
+            tail = createSegment(HEADER_SIZE + recordSize);
+        }
+
+        MappedByteBuffer buffer = tail.map();
+        buffer.putInt(tail.writePosition, bytes.length);
+        ByteBuffer record = buffer.duplicate();
+        record.position(tail.writePosition + LENGTH_SIZE);
+        record.put(bytes);
+        tail.writePosition += recordSize;
+        buffer.putInt(WRITE_POSITION_OFFSET, tail.writePosition); // commits the record
+        size++;
+    }
+
+    @Override
+    public void offerAll(@Nonnull List<? extends E> events) {
+        if(overflowPolicy == OverflowPolicy.THROW && (long) size + events.size() > capacity) {
+            throw new IllegalStateException("The pending event queue is full (capacity: " + capacity + ")!");
+        }
+        for(int i = 0, count = events.size(); i < count; i++) {
+            offer(events.get(i));
+        }
+    }
+
+    @Nullable
+    @Override
+    public E poll() {
+        if(size == 0) {
+            return null;
+        }
+        Segment head = segments.getFirst();
+        MappedByteBuffer buffer = head.map();
+        byte[] bytes = new byte[buffer.getInt(head.readPosition)];
+        ByteBuffer record = buffer.duplicate();
+        record.position(head.readPosition + LENGTH_SIZE);
+        record.get(bytes);
+        skip(); // a record that can't be deserialized would otherwise block the queue, even after a restart
+        E event = serializer.deserialize(bytes);
+        //noinspection ConstantConditions
+        if(event == null) {
+            throw new IllegalStateException("Deserialized event should not be null!");
+        }
+        return event;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Removes the record at the head of the queue without deserializing it.
+     */
+    private void skip() {
+        Segment head = segments.getFirst();
+        MappedByteBuffer buffer = head.map();
+        head.readPosition += LENGTH_SIZE + buffer.getInt(head.readPosition);
+        buffer.putInt(READ_POSITION_OFFSET, head.readPosition);
+        size--;
+        if(head.readPosition == head.writePosition) {
+            compact(head);
+        }
+    }
+
+    private void compact(Segment head) {
+        if(segments.size() > 1) {
+            segments.removeFirst();
+            head.delete();
+        } else {
+            MappedByteBuffer buffer = head.map();
+            head.writePosition = HEADER_SIZE;
+            buffer.putInt(WRITE_POSITION_OFFSET, HEADER_SIZE); // the write position is reset first, a read position after it means empty
+            head.readPosition = HEADER_SIZE;
+            buffer.putInt(READ_POSITION_OFFSET, HEADER_SIZE);
+        }
+    }
+
+    private void restoreSegments() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if(files == null) {
+            throw new IllegalStateException("Could not list directory [" + directory + "]!");
+        }
+        Arrays.sort(files); // the ids are zero-padded, so the names are in creation order
+        for(File file : files) {
+            String name = file.getName();
+            long id;
+            try {
+                id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            } catch(NumberFormatException e) {
+                continue;
+            }
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+
+            Segment segment = new Segment(file);
+            MappedByteBuffer buffer = segment.map();
+            int magic = segment.length < HEADER_SIZE ? 0 : buffer.getInt(0);
+            if(magic == 0) {
+                segment.delete(); // interrupted while it was being created
+                continue;
+            }
+            if(magic != MAGIC) {
+                throw new IllegalStateException("The file [" + file + "] is not a pending event segment!");
+            }
+            segment.readPosition = buffer.getInt(READ_POSITION_OFFSET);
+            segment.writePosition = buffer.getInt(WRITE_POSITION_OFFSET);
+            if(segment.readPosition < HEADER_SIZE || segment.writePosition > segment.length) {
+                throw new IllegalStateException("The segment [" + file + "] is corrupted!");
+            }
+            if(segment.readPosition >= segment.writePosition) {
+                segment.delete(); // drained, or interrupted while it was being reset
+                continue;
+            }
+            for(int position = segment.readPosition; position < segment.writePosition; ) {
+                int remaining = segment.writePosition - position - LENGTH_SIZE;
+                int length = remaining < 0 ? -1 : buffer.getInt(position);
+                if(length < 0 || length > remaining) {
+                    throw new IllegalStateException("The segment [" + file + "] is corrupted!");
+                }
+                position += LENGTH_SIZE + length;
+                size++;
+            }
+            Segment previous = segments.peekLast();
+            if(previous != null && previous != segments.peekFirst()) {
+                previous.buffer = null; // only the head and the tail are kept mapped
+            }
+            segments.addLast(segment);
+        }
+    }
+
+    private Segment createSegment(int minimumLength) {
+        File file = new File(directory, String.format("%s%019d%s", SEGMENT_PREFIX, nextSegmentId++, SEGMENT_SUFFIX));
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.setLength(Math.max(segmentSize, minimumLength));
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch(IOException e) {
+            throw new IllegalStateException("Could not create segment [" + file + "]!", e);
+        }
+        Segment segment = new Segment(file);
+        MappedByteBuffer buffer = segment.map();
+        buffer.putInt(READ_POSITION_OFFSET, HEADER_SIZE);
+        buffer.putInt(WRITE_POSITION_OFFSET, HEADER_SIZE);
+        buffer.putInt(0, MAGIC);
+        segment.readPosition = HEADER_SIZE;
+        segment.writePosition = HEADER_SIZE;
+
+        Segment previous = segments.peekLast();
+        if(previous != null && previous != segments.peekFirst()) {
+            previous.buffer = null; // only the head and the tail are kept mapped
+        }
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private static final class Segment {
+        final File file;
+
+        int length;
+
+        int readPosition;
+
+        int writePosition;
+
+        @Nullable
+        MappedByteBuffer buffer;
+
+        Segment(File file) {
+            this.file = file;
+        }
+
+        MappedByteBuffer map() {
+            MappedByteBuffer buffer = this.buffer;
+            if(buffer == null) {
+                try {
+                    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+                    try {
+                        length = (int) randomAccessFile.length();
+                        buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+                    } finally {
+                        randomAccessFile.close(); // the mapping stays valid after the channel is closed
+                    }
+                } catch(IOException e) {
+                    throw new IllegalStateException("Could not map segment [" + file + "]!", e);
+                }
+                this.buffer = buffer;
+            }
+            return buffer;
+        }
+
+        void delete() {
+            buffer = null;
+            // on some platforms, a mapped file can't be deleted, it is deleted as drained when the queue is restored
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock-free multi-producer single-consumer linked queue.
+ *
+ * Any thread can {@link #offer(Object)}, but only a single thread at a time is allowed to {@link #poll()}.
+ *
+ * @param <E> the element type
+ */
+final class MpscLinkedQueue<E> {
+    private static final class Node<E> {
+        E value;
+
+        final AtomicReference<Node<E>> next = new AtomicReference<>();
+
+        Node(@Nullable E value) {
+            this.value = value;
+        }
+    }
+
+    private final AtomicReference<Node<E>> producerNode;
+
+    private volatile Node<E> consumerNode;
+
+    MpscLinkedQueue() {
+        Node<E> stub = new Node<>(null);
+        producerNode = new AtomicReference<>(stub);
+        consumerNode = stub;
+    }
+
+    /**
+     * Adds the element to the end of the queue. Can be called from any thread.
+     *
+     * @param value the element
+     */
+    void offer(@Nonnull E value) {
+        Node<E> node = new Node<>(value);
+        Node<E> previous = producerNode.getAndSet(node);
+        previous.next.lazySet(node);
+    }
+
+    /**
+     * Removes the element at the head of the queue. Must only be called by one thread at a time.
+     *
+     * @return the element, or null if the queue is empty (or an offer is still in progress)
+     */
+    @Nullable
+    E poll() {
+        Node<E> current = consumerNode;
+        Node<E> next = current.next.get();
+        if(next == null) {
+            return null;
+        }
+        E value = next.value;
+        next.value = null;
+        consumerNode = next;
+        return value;
+    }
+
+    /**
+     * Returns if the queue is empty. Can be called from any thread.
+     *
+     * @return if the queue is empty
+     */
+    boolean isEmpty() {
+        return consumerNode == producerNode.get();
+    }
+}
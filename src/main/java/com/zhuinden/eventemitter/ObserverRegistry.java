@@ -0,0 +1,193 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An array-backed observer registry, where each registration holds its own slot index.
+ *
+ * Registration appends to the end of the slot array, and removal clears the slot, both in O(1). Cleared slots are compacted once they
+ * make up the majority of the array, but never while a dispatch is in progress, so that a dispatch can walk the slots it saw at the
+ * start of the pass without allocating. Observers that are removed during dispatch are skipped, observers that are added during dispatch
+ * are only notified from the next dispatch.
+ *
+ * Not thread-safe, it is confined to the thread of its owner.
+ *
+ * @param <O> the observer type
+ */
+final class ObserverRegistry<O> {
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * A registration in the registry.
+     *
+     * @param <O> the observer type
+     */
+    static final class Entry<O> {
+        final O observer;
+
+        int index;
+
+        boolean isActive = true;
+
+        Entry(O observer, int index) {
+            this.observer = observer;
+            this.index = index;
+        }
+    }
+
+    /**
+     * A notification token that removes an entry from a registry. It lets {@link CompositeNotificationToken} defer the compaction of
+     * the registry until all of its tracked notification tokens stopped listening.
+     */
+    interface Token extends EventSource.NotificationToken {
+        /**
+         * Returns the registry that the entry is removed from, or null if the registry can't be accessed on the current thread.
+         *
+         * @return the registry
+         */
+        @Nullable
+        ObserverRegistry<?> getRegistry();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Entry<O>[] entries = new Entry[INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    private int removedCount = 0;
+
+    private int dispatchDepth = 0;
+
+    /**
+     * Registers the observer.
+     *
+     * @param observer the observer
+     * @return the entry, which can be used to remove the observer
+     */
+    @Nonnull
+    Entry<O> add(@Nonnull O observer) {
+        if(size == entries.length) {
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Entry<O>[] newEntries = new Entry[entries.length * 2];
+            System.arraycopy(entries, 0, newEntries, 0, size);
+            entries = newEntries;
+        }
+        Entry<O> entry = new Entry<>(observer, size);
+        entries[size++] = entry;
+        return entry;
+    }
+
+    /**
+     * Removes the entry. Removing an entry that was already removed has no effect.
+     *
+     * @param entry the entry
+     */
+    void remove(@Nonnull Entry<O> entry) {
+        if(!entry.isActive) {
+            return;
+        }
+        entry.isActive = false;
+        entries[entry.index] = null;
+        removedCount++;
+        compactIfNeeded();
+    }
+
+    /**
+     * Returns the number of registered observers.
+     *
+     * @return the observer count
+     */
+    int getObserverCount() {
+        return size - removedCount;
+    }
+
+    /**
+     * Returns if there are no registered observers.
+     *
+     * @return if there are no observers
+     */
+    boolean isEmpty() {
+        return size == removedCount;
+    }
+
+    /**
+     * Returns the slot array. Slots from {@link #getSlotCount()} onwards are unused, and removed slots are null.
+     *
+     * Only valid until the registry is modified, unless the access happens between {@link #beginDispatch()} and {@link #endDispatch()}.
+     *
+     * @return the slot array
+     */
+    Entry<O>[] getSlots() {
+        return entries;
+    }
+
+    /**
+     * Returns the number of used slots, including the removed ones.
+     *
+     * @return the slot count
+     */
+    int getSlotCount() {
+        return size;
+    }
+
+    /**
+     * Marks the start of a dispatch, which prevents compaction until {@link #endDispatch()}. Also used to remove multiple entries with a single compaction.
+     */
+    void beginDispatch() {
+        dispatchDepth++;
+    }
+
+    /**
+     * Marks the end of a dispatch.
+     */
+    void endDispatch() {
+        dispatchDepth--;
+        compactIfNeeded();
+    }
+
+    private void compactIfNeeded() {
+        if(dispatchDepth > 0 || removedCount == 0) {
+            return;
+        }
+        if(removedCount == size) {
+            for(int i = 0; i < size; i++) {
+                entries[i] = null;
+            }
+            size = 0;
+            removedCount = 0;
+            return;
+        }
+        if(removedCount * 2 < size) {
+            return;
+        }
+        int target = 0;
+        for(int i = 0; i < size; i++) {
+            Entry<O> entry = entries[i];
+            if(entry != null) {
+                entry.index = target;
+                entries[target++] = entry;
+            }
+        }
+        for(int i = target; i < size; i++) {
+            entries[i] = null;
+        }
+        size = target;
+        removedCount = 0;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+/**
+ * The overflow policy determines what happens when an event is enqueued into a pending event queue that is already full.
+ */
+public enum OverflowPolicy {
+    /**
+     * The oldest pending event is dropped to make room for the new event.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The new event is dropped.
+     */
+    DROP_NEWEST,
+
+    /**
+     * An {@link IllegalStateException} is thrown.
+     */
+    THROW,
+
+    /**
+     * The new event replaces the pending event that has the same key, keeping its position in the queue. If there is no such event, the
+     * oldest pending event is dropped.
+     *
+     * Requires a {@link KeySelector}.
+     */
+    COALESCE_BY_KEY
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The partitioned event emitter dispatches events on multiple threads in parallel.
+ *
+ * The events are split into shards by their partition key. Each shard is an {@link EventEmitter} with its own pending event queue and
+ * pause state, confined to its own thread. Events with the same partition key are always dispatched on the same shard, so they are
+ * received in the order they were emitted (from the same thread), while events with different keys can be dispatched in parallel.
+ *
+ * Events can be emitted, and observers can be registered and unregistered from any thread. Registering and unregistering waits until
+ * every affected shard has processed the change. The observers are called on the threads of the shards, so observers registered to
+ * multiple shards need to be thread-safe.
+ *
+ * An exception or error thrown by an observer while an event is emitted is reported to the uncaught exception handler of the shard
+ * thread, and the shard keeps dispatching the next events on the same thread. An exception or error thrown by an observer while
+ * registering, unregistering or pausing is rethrown to the caller instead.
+ *
+ * Registering, unregistering and pausing from an observer waits for the other affected shards. If two shards wait for each other this
+ * way at the same time, they deadlock, so observers should not change the registrations or pause state of multiple shards while
+ * other observers on other shards can do the same.
+ *
+ * The threads of the shards are stopped with {@link #shutdown()}.
+ *
+ * @param <E> the event type
+ */
+public class PartitionedEventEmitter<E> implements EventSource<E> {
+    private final KeySelector<? super E, ?> partitionKeySelector;
+
+    private final Shard<E>[] shards;
+
+    /**
+     * Creates a partitioned event emitter, where each shard has an unbounded pending event queue.
+     *
+     * @param shardCount           the number of shards
+     * @param partitionKeySelector the key selector that selects the partition key of the event
+     */
+    public PartitionedEventEmitter(int shardCount, @Nonnull KeySelector<? super E, ?> partitionKeySelector) {
+        this(shardCount, partitionKeySelector, new EventEmitter.Builder<E>());
+    }
+
+    /**
+     * Creates a partitioned event emitter, where each shard is built by the builder.
+     *
+     * @param shardCount           the number of shards
+     * @param partitionKeySelector the key selector that selects the partition key of the event
+     * @param builder              the builder used to build the event emitter of each shard
+     */
+    public PartitionedEventEmitter(int shardCount, @Nonnull KeySelector<? super E, ?> partitionKeySelector, @Nonnull final EventEmitter.Builder<E> builder) {
+        if(shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count should be positive!");
+        }
+        //noinspection ConstantConditions
+        if(partitionKeySelector == null) {
+            throw new IllegalArgumentException("Partition key selector should not be null!");
+        }
+        //noinspection ConstantConditions
+        if(builder == null) {
+            throw new IllegalArgumentException("Builder should not be null!");
+        }
+        this.partitionKeySelector = partitionKeySelector;
+        this.shards = newShardArray(shardCount);
+        for(int i = 0; i < shardCount; i++) {
+            final String threadName = "event-emitter-shard-" + i;
+            final Shard<E> shard = new Shard<>(Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@Nonnull Runnable runnable) {
+                    Thread thread = new Thread(runnable, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }));
+            shard.emitter = shard.call(new Callable<EventEmitter<E>>() {
+                @Override
+                public EventEmitter<E> call() {
+                    shard.thread = Thread.currentThread();
+                    return builder.build(); // the emitter is confined to the thread where it is created
+                }
+            });
+            shards[i] = shard;
+        }
+    }
+
+    /**
+     * Register to and start listening to the events of all shards.
+     *
+     * @param observer the observer
+     * @return the notification token, used to unregister the observer from all shards.
+     */
+    @Nonnull
+    @Override
+    public final NotificationToken startListening(@Nonnull EventObserver<E> observer) {
+        int[] shardIndices = new int[shards.length];
+        for(int i = 0; i < shards.length; i++) {
+            shardIndices[i] = i;
+        }
+        return startListening(observer, shardIndices);
+    }
+
+    /**
+     * Register to and start listening to the events of the selected shards.
+     *
+     * @param observer     the observer
+     * @param shardIndices the indices of the shards
+     * @return the notification token, used to unregister the observer from the selected shards.
+     */
+    @Nonnull
+    public final NotificationToken startListening(@Nonnull final EventObserver<E> observer, @Nonnull int... shardIndices) {
+        //noinspection ConstantConditions
+        if(observer == null) {
+            throw new IllegalArgumentException("Observer should not be null!");
+        }
+        //noinspection ConstantConditions
+        if(shardIndices == null) {
+            throw new IllegalArgumentException("Shard indices should not be null!");
+        }
+        for(int shardIndex : shardIndices) {
+            if(shardIndex < 0 || shardIndex >= shards.length) {
+                throw new IllegalArgumentException("Shard index [" + shardIndex + "] should be between 0 and " + (shards.length - 1) + "!");
+            }
+        }
+
+        final Shard<E>[] selectedShards = newShardArray(shardIndices.length);
+        final NotificationToken[] notificationTokens = new NotificationToken[shardIndices.length];
+        for(int i = 0; i < shardIndices.length; i++) {
+            final Shard<E> shard = shards[shardIndices[i]];
+            selectedShards[i] = shard;
+            notificationTokens[i] = shard.call(new Callable<NotificationToken>() {
+                @Override
+                public NotificationToken call() {
+                    return shard.emitter.startListening(observer);
+                }
+            });
+        }
+
+        return new NotificationToken() {
+            @Override
+            public void stopListening() {
+                for(int i = 0; i < selectedShards.length; i++) {
+                    final NotificationToken notificationToken = notificationTokens[i];
+                    selectedShards[i].call(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            notificationToken.stopListening();
+                            return null;
+                        }
+                    });
+                }
+            }
+        };
+    }
+
+    /**
+     * Emits the event on the shard of its partition key. If the shard has no observers, it is enqueued on that shard until there is at least one observer.
+     *
+     * @param event the event
+     * @throws java.util.concurrent.RejectedExecutionException if the emitter is already shut down
+     */
+    public final void emit(@Nonnull final E event) {
+        //noinspection ConstantConditions
+        if(event == null) {
+            throw new IllegalArgumentException("Event should not be null!");
+        }
+
+        final Shard<E> shard = shards[getShardIndex(event)];
+        shard.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    shard.emitter.emit(event);
+                } catch(Throwable e) { // the thread of the shard must survive, as its emitter is confined to it
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * When paused, none of the shards will emit any events until they are no longer paused.
+     *
+     * @param paused if the shards should be paused
+     */
+    public final void setPaused(boolean paused) {
+        for(int i = 0; i < shards.length; i++) {
+            setPaused(i, paused);
+        }
+    }
+
+    /**
+     * When paused, the shard will not emit any events until it is no longer paused.
+     *
+     * @param shardIndex the index of the shard
+     * @param paused     if the shard should be paused
+     */
+    public final void setPaused(int shardIndex, final boolean paused) {
+        if(shardIndex < 0 || shardIndex >= shards.length) {
+            throw new IllegalArgumentException("Shard index [" + shardIndex + "] should be between 0 and " + (shards.length - 1) + "!");
+        }
+        final Shard<E> shard = shards[shardIndex];
+        shard.call(new Callable<Void>() {
+            @Override
+            public Void call() {
+                shard.emitter.setPaused(paused);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the shard count
+     */
+    public final int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the index of the shard that the event is dispatched on.
+     *
+     * @param event the event
+     * @return the shard index
+     */
+    public final int getShardIndex(@Nonnull E event) {
+        int hash = partitionKeySelector.getKey(event).hashCode();
+        hash ^= (hash >>> 16);
+        return (hash & Integer.MAX_VALUE) % shards.length;
+    }
+
+    /**
+     * Stops the threads of the shards once the events that were already emitted are dispatched. Events can no longer be emitted after shutdown.
+     */
+    public final void shutdown() {
+        for(Shard<E> shard : shards) {
+            shard.executor.shutdown();
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <E> Shard<E>[] newShardArray(int length) {
+        return new Shard[length];
+    }
+
+    private static final class Shard<E> {
+        final ExecutorService executor;
+
+        volatile Thread thread;
+
+        EventEmitter<E> emitter; // safely published by the executor
+
+        Shard(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Runs the task on the thread of the shard and waits for its result. If called on the thread of the shard, it runs immediately.
+         *
+         * If called on the thread of another shard, that shard is blocked until the task completes, see the deadlock note on the class.
+         */
+        <T> T call(Callable<T> task) {
+            if(Thread.currentThread() == thread) {
+                try {
+                    return task.call();
+                } catch(RuntimeException e) {
+                    throw e;
+                } catch(Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            try {
+                return executor.submit(task).get();
+            } catch(ExecutionException e) {
+                Throwable cause = e.getCause();
+                if(cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if(cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the shard!", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A ring buffer that holds the events that could not be emitted yet.
+ *
+ * The buffer grows on demand up to its capacity, after which the {@link OverflowPolicy} decides what happens.
+ *
+ * When conflation is enabled, the buffer keeps only the newest (or merged) event per key, at the position where the first event with
+ * that key arrived. The position of each key is indexed, so conflating an event is O(1).
+ *
+ * Not thread-safe, it is confined to the thread of its owner.
+ *
+ * @param <E> the event type
+ */
+final class PendingEventQueue<E> implements EventQueue<E> {
+    static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int capacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    @Nullable
+    private final KeySelector<? super E, ?> keySelector;
+
+    private Object[] events;
+
+    private int head = 0;
+
+    private int size = 0;
+
+    private long headSequence = 0L;
+
+    @Nullable
+    private KeySelector<? super E, ?> conflationKeySelector = null;
+
+    @Nullable
+    private EventMerger<E> eventMerger = null;
+
+    @Nullable
+    private Map<Object, Long> conflationIndex = null;
+
+    @Nullable
+    private Object[] keys = null;
+
+    private long droppedCount = 0;
+
+    PendingEventQueue() {
+        this(UNBOUNDED, OverflowPolicy.THROW, null);
+    }
+
+    PendingEventQueue(int capacity, @Nonnull OverflowPolicy overflowPolicy, @Nullable KeySelector<? super E, ?> keySelector) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be positive!");
+        }
+        //noinspection ConstantConditions
+        if(overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy should not be null!");
+        }
+        if(overflowPolicy == OverflowPolicy.COALESCE_BY_KEY && keySelector == null) {
+            throw new IllegalArgumentException("The COALESCE_BY_KEY overflow policy requires a key selector!");
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.keySelector = keySelector;
+        this.events = new Object[Math.min(capacity, INITIAL_CAPACITY)];
+    }
+
+    /**
+     * Enables conflation. Must be called while the queue is empty.
+     *
+     * @param keySelector the key selector
+     * @param eventMerger the event merger, or null if the newest event should replace the pending event
+     */
+    void setConflation(@Nonnull KeySelector<? super E, ?> keySelector, @Nullable EventMerger<E> eventMerger) {
+        if(size != 0) {
+            throw new IllegalStateException("Conflation can only be enabled while the queue is empty!");
+        }
+        this.conflationKeySelector = keySelector;
+        this.eventMerger = eventMerger;
+        this.conflationIndex = new HashMap<>();
+        this.keys = new Object[events.length];
+    }
+
+    /**
+     * Adds the event to the end of the queue. If the queue is full, the overflow policy is applied.
+     *
+     * If conflation is enabled and there is a pending event with the same key, the pending event is replaced instead.
+     *
+     * @param event the event
+     * @throws IllegalStateException if the queue is full, and the overflow policy is {@link OverflowPolicy#THROW}
+     */
+    @Override
+    public void offer(@Nonnull E event) {
+        Object key = null;
+        if(conflationIndex != null) {
+            //noinspection ConstantConditions
+            key = conflationKeySelector.getKey(event);
+            Long sequence = conflationIndex.get(key);
+            if(sequence != null) {
+                conflate((head + (int) (sequence - headSequence)) % events.length, event);
+                return;
+            }
+        }
+
+        if(size == events.length && size < capacity) {
+            grow();
+        }
+
+        if(size == capacity) {
+            switch(overflowPolicy) {
+                case DROP_NEWEST:
+                    droppedCount++;
+                    return;
+                case THROW:
+                    throw new IllegalStateException("The pending event queue is full (capacity: " + capacity + ")!");
+                case COALESCE_BY_KEY:
+                    if(conflationIndex == null && replaceEventWithSameKey(event)) {
+                        droppedCount++;
+                        return;
+                    }
+                    dropOldest(); // there is no event with the same key
+                    break;
+                case DROP_OLDEST:
+                default:
+                    dropOldest();
+                    break;
+            }
+        }
+
+        int index = (head + size) % events.length;
+        events[index] = event;
+        if(conflationIndex != null) {
+            //noinspection ConstantConditions
+            keys[index] = key;
+            conflationIndex.put(key, headSequence + size);
+        }
+        size++;
+    }
+
+    /**
+     * Adds the events to the end of the queue, growing the buffer at most once. If the queue is full, the overflow policy is applied for each event.
+     *
+     * If the overflow policy is {@link OverflowPolicy#THROW}, either all events are added, or none of them.
+     *
+     * @param events the events
+     * @throws IllegalStateException if the events don't fit in the queue, and the overflow policy is {@link OverflowPolicy#THROW}
+     */
+    @Override
+    public void offerAll(@Nonnull List<? extends E> events) {
+        if(overflowPolicy == OverflowPolicy.THROW && (long) size + countAddedEvents(events) > capacity) {
+            throw new IllegalStateException("The pending event queue is full (capacity: " + capacity + ")!");
+        }
+        int required = (int) Math.min((long) size + events.size(), capacity);
+        if(required > this.events.length) {
+            resize(required);
+        }
+        for(int i = 0, count = events.size(); i < count; i++) {
+            offer(events.get(i));
+        }
+    }
+
+    /**
+     * Removes the event at the head of the queue.
+     *
+     * @return the event, or null if the queue is empty
+     */
+    @Nullable
+    @Override
+    public E poll() {
+        if(size == 0) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        E event = (E) events[head];
+        events[head] = null;
+        if(conflationIndex != null) {
+            //noinspection ConstantConditions
+            conflationIndex.remove(keys[head]);
+            keys[head] = null;
+        }
+        head = (head + 1) % events.length;
+        headSequence++;
+        size--;
+        return event;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of events that were dropped or coalesced because the queue was full.
+     *
+     * @return the dropped event count
+     */
+    @Override
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    private int countAddedEvents(List<? extends E> events) {
+        if(conflationIndex == null) {
+            return events.size();
+        }
+        Set<Object> addedKeys = new HashSet<>(); // the events with a pending key are conflated, they don't take space
+        for(int i = 0, count = events.size(); i < count; i++) {
+            //noinspection ConstantConditions
+            Object key = conflationKeySelector.getKey(events.get(i));
+            if(!conflationIndex.containsKey(key)) {
+                addedKeys.add(key);
+            }
+        }
+        return addedKeys.size();
+    }
+
+    private void dropOldest() {
+        poll();
+        droppedCount++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean replaceEventWithSameKey(E event) {
+        //noinspection ConstantConditions
+        KeySelector<? super E, ?> keySelector = this.keySelector;
+        Object key = keySelector.getKey(event);
+        for(int i = 0; i < size; i++) {
+            int index = (head + i) % events.length;
+            if(key.equals(keySelector.getKey((E) events[index]))) {
+                events[index] = event;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void conflate(int index, E event) {
+        E pendingEvent = (E) events[index];
+        if(eventMerger == null) {
+            events[index] = event;
+        } else {
+            E mergedEvent = eventMerger.merge(pendingEvent, event);
+            //noinspection ConstantConditions
+            if(mergedEvent == null) {
+                throw new IllegalArgumentException("Merged event should not be null!");
+            }
+            events[index] = mergedEvent;
+        }
+    }
+
+    private void grow() {
+        resize((int) Math.min((long) events.length * 2, capacity));
+    }
+
+    private void resize(int newLength) {
+        Object[] newEvents = new Object[newLength];
+        for(int i = 0; i < size; i++) {
+            newEvents[i] = events[(head + i) % events.length];
+        }
+        if(keys != null) {
+            Object[] newKeys = new Object[newLength];
+            for(int i = 0; i < size; i++) {
+                newKeys[i] = keys[(head + i) % keys.length];
+            }
+            keys = newKeys;
+        }
+        events = newEvents;
+        head = 0;
+    }
+}
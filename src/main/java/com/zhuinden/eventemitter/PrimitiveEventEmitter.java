@@ -0,0 +1,158 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+/**
+ * The shared base of the primitive event emitters, which registers the observers, and keeps the pending events.
+ *
+ * The pending events are stored in a growable ring buffer of the primitive array type of the emitter, whose slots are managed here. The
+ * emitters only read and write the values of the slots, and notify their observers, as that can't be done without boxing here.
+ *
+ * @param <O> the observer type
+ * @param <A> the primitive array type of the pending events
+ */
+abstract class PrimitiveEventEmitter<O, A> {
+    static final int INITIAL_CAPACITY = 16;
+
+    final long threadId = Thread.currentThread().getId();
+
+    final ObserverRegistry<O> observers = new ObserverRegistry<>();
+
+    A pendingEvents;
+
+    private int pendingEventsMask = INITIAL_CAPACITY - 1;
+
+    private int pendingEventsHead = 0;
+
+    private int pendingEventCount = 0;
+
+    private boolean isPaused = false;
+
+    PrimitiveEventEmitter(A pendingEvents) {
+        this.pendingEvents = pendingEvents; // of INITIAL_CAPACITY length
+    }
+
+    /**
+     * Creates the array of the pending events.
+     *
+     * @param length the length, a power of two
+     * @return the array
+     */
+    abstract A createPendingEvents(int length);
+
+    /**
+     * Notifies the observers of the pending event stored in the slot.
+     *
+     * @param index the index of the slot
+     */
+    abstract void emitPendingEvent(int index);
+
+    /**
+     * When paused, the event emitter will not emit any events until it is no longer paused
+     *
+     * @param paused if event emitter should be paused
+     */
+    public final void setPaused(boolean paused) {
+        this.isPaused = paused;
+        if(!paused) {
+            emitPendingEvents();
+        }
+    }
+
+    /**
+     * Returns the number of events that are enqueued, waiting for an observer or for the emitter to be no longer paused.
+     *
+     * @return the pending event count
+     */
+    public final int getPendingEventCount() {
+        return pendingEventCount;
+    }
+
+    final EventSource.NotificationToken addObserver(O observer) {
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You should register observers only on the thread where the emitter was created");
+        }
+
+        //noinspection ConstantConditions
+        if(observer == null) {
+            throw new IllegalArgumentException("Observer should not be null!");
+        }
+
+        final ObserverRegistry.Entry<O> entry = observers.add(observer);
+        if(observers.getObserverCount() == 1) {
+            emitPendingEvents();
+        }
+
+        return new EventSource.NotificationToken() {
+            private boolean isDisposed = false;
+
+            @Override
+            public final void stopListening() {
+                if(threadId != Thread.currentThread().getId()) {
+                    throw new IllegalStateException("You should unregister observers only on the thread where the emitter was created");
+                }
+
+                if(isDisposed) {
+                    throw new IllegalStateException("This observer has already stopped listening!");
+                }
+
+                isDisposed = true;
+
+                observers.remove(entry);
+            }
+        };
+    }
+
+    /**
+     * Returns if the emitted event should be enqueued, because the emitter is paused, or there are no observers.
+     */
+    final boolean shouldEnqueue() {
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You can only emit events on the thread where the emitter was created");
+        }
+
+        return isPaused || observers.isEmpty();
+    }
+
+    /**
+     * Reserves the slot of a new pending event at the tail of the ring buffer, which is grown if it is full. The array of the pending
+     * events must be read after this is called, as growing it replaces it.
+     *
+     * @return the index of the slot
+     */
+    final int enqueue() {
+        if(pendingEventCount == pendingEventsMask + 1) {
+            int capacity = pendingEventCount;
+            A newPendingEvents = createPendingEvents(capacity * 2);
+            int headLength = capacity - pendingEventsHead;
+            System.arraycopy(pendingEvents, pendingEventsHead, newPendingEvents, 0, headLength);
+            System.arraycopy(pendingEvents, 0, newPendingEvents, headLength, pendingEventsHead);
+            pendingEvents = newPendingEvents;
+            pendingEventsMask = capacity * 2 - 1;
+            pendingEventsHead = 0;
+        }
+        return (pendingEventsHead + pendingEventCount++) & pendingEventsMask;
+    }
+
+    private void emitPendingEvents() {
+        while(!isPaused && !observers.isEmpty() && pendingEventCount != 0) {
+            int index = pendingEventsHead;
+            pendingEventsHead = (index + 1) & pendingEventsMask;
+            pendingEventCount--;
+            emitPendingEvent(index);
+        }
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The remote event sink sends the events it receives to the {@link RemoteEventSource}s of other processes on the same host.
+ *
+ * The sink listens on a port of the loopback interface, so only local processes can connect. Without a token, any local process can
+ * connect and receive the events. With a token, only the sources that send the same token in their handshake are accepted, so the
+ * token should be shared with the other processes through a channel that only they can read (like a file with restricted permissions).
+ *
+ * It is an observer, so it can be registered to any {@link EventSource}. Each event is serialized once, and the serialized events are
+ * written to the connected processes by a single thread, using non-blocking writes. Events are only sent to the processes that are
+ * connected when the event is written, and a process that disconnects is removed.
+ *
+ * Events wait in a queue of at most {@link #MAX_PENDING_BYTES} bytes until they are written, and an event that does not fit in the queue
+ * is dropped (see {@link #getDroppedEventCount()}). A process that does not read its events fast enough is disconnected once more than
+ * {@link #MAX_PENDING_BYTES_PER_CONNECTION} bytes are waiting to be written to it, so it does not hold back the other processes.
+ *
+ * The sink can receive events from any thread. Failures of the writer thread are reported to its uncaught exception handler.
+ *
+ * @param <E> the event type
+ */
+public class RemoteEventSink<E> implements EventSource.EventObserver<E>, Closeable {
+    static final int MAGIC = 0x45564d31;
+
+    static final int LENGTH_SIZE = 4;
+
+    /**
+     * The maximum size of a serialized event.
+     */
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * The maximum number of bytes of the events that wait to be written.
+     */
+    public static final int MAX_PENDING_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * The maximum number of bytes that wait to be written to a connected process before it is disconnected.
+     */
+    public static final int MAX_PENDING_BYTES_PER_CONNECTION = 32 * 1024 * 1024;
+
+    static final int MAX_TOKEN_LENGTH = 1024;
+
+    private static final int MAX_BATCH_LENGTH = 1024 * 1024;
+
+    private final EventSerializer<E> serializer;
+
+    private final byte[] token;
+
+    private final ServerSocketChannel serverSocketChannel;
+
+    private final Selector selector;
+
+    private final Queue<byte[]> frames = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    private final AtomicBoolean isWakeUpRequested = new AtomicBoolean(false);
+
+    private final AtomicLong droppedEventCount = new AtomicLong();
+
+    private final List<Connection> connections = new ArrayList<>(); // confined to the writer thread
+
+    private volatile int connectionCount = 0;
+
+    private final Thread writeThread;
+
+    private volatile boolean isClosed = false;
+
+    /**
+     * Creates a remote event sink that listens on the port of the loopback interface, and accepts any local process.
+     *
+     * @param port       the port, or 0 to use any free port (see {@link #getPort()})
+     * @param serializer the serializer of the events
+     * @throws IOException if the port can't be bound
+     */
+    public RemoteEventSink(int port, @Nonnull EventSerializer<E> serializer) throws IOException {
+        this(port, serializer, null);
+    }
+
+    /**
+     * Creates a remote event sink that listens on the port of the loopback interface, and accepts the local processes that send the token.
+     *
+     * @param port       the port, or 0 to use any free port (see {@link #getPort()})
+     * @param serializer the serializer of the events
+     * @param token      the token that the sources should send, or null to accept any local process
+     * @throws IOException if the port can't be bound
+     */
+    public RemoteEventSink(int port, @Nonnull EventSerializer<E> serializer, @Nullable byte[] token) throws IOException {
+        //noinspection ConstantConditions
+        if(serializer == null) {
+            throw new IllegalArgumentException("Serializer should not be null!");
+        }
+        if(token != null && token.length > MAX_TOKEN_LENGTH) {
+            throw new IllegalArgumentException("Token should not be longer than " + MAX_TOKEN_LENGTH + " bytes!");
+        }
+        this.serializer = serializer;
+        this.token = token == null ? null : token.clone();
+        this.selector = Selector.open();
+        this.serverSocketChannel = ServerSocketChannel.open();
+        try {
+            serverSocketChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            serverSocketChannel.configureBlocking(false);
+            serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch(IOException e) {
+            closeQuietly(serverSocketChannel);
+            closeQuietly(selector);
+            throw e;
+        }
+
+        writeThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeFrames();
+            }
+        }, "event-emitter-sink-" + getPort());
+        writeThread.setDaemon(true);
+        writeThread.start();
+    }
+
+    /**
+     * Returns the port that the sink listens on.
+     *
+     * @return the port
+     */
+    public final int getPort() {
+        return serverSocketChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the number of connected processes.
+     *
+     * @return the connection count
+     */
+    public final int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * Returns the number of events that were dropped, because too many bytes were waiting to be written.
+     *
+     * @return the dropped event count
+     */
+    public final long getDroppedEventCount() {
+        return droppedEventCount.get();
+    }
+
+    /**
+     * Sends the event to the connected processes. Can be called from any thread.
+     *
+     * @param event the event
+     */
+    @Override
+    public final void onEventReceived(@Nonnull E event) {
+        //noinspection ConstantConditions
+        if(event == null) {
+            throw new IllegalArgumentException("Event should not be null!");
+        }
+        if(isClosed) {
+            return;
+        }
+        byte[] bytes = serializer.serialize(event);
+        //noinspection ConstantConditions
+        if(bytes == null) {
+            throw new IllegalArgumentException("Serialized event should not be null!");
+        }
+        if(bytes.length > MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("Serialized event should not be longer than " + MAX_FRAME_LENGTH + " bytes!");
+        }
+        int frameLength = LENGTH_SIZE + bytes.length;
+        if(pendingBytes.addAndGet(frameLength) > MAX_PENDING_BYTES) {
+            pendingBytes.addAndGet(-frameLength);
+            droppedEventCount.incrementAndGet();
+            return;
+        }
+        frames.offer(bytes);
+        if(!isWakeUpRequested.get() && isWakeUpRequested.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Stops listening for connections, and disconnects the connected processes. Events that are not written yet are discarded.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        selector.wakeup();
+        closeQuietly(serverSocketChannel);
+    }
+
+    private void writeFrames() {
+        List<byte[]> batch = new ArrayList<>();
+        try {
+            while(!isClosed) {
+                selector.select();
+                if(isClosed) {
+                    return;
+                }
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while(selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if(!key.isValid()) {
+                        continue;
+                    }
+                    if(key.isAcceptable()) {
+                        acceptConnection();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if(key.isReadable()) {
+                        read(connection);
+                    }
+                    if(key.isValid() && key.isWritable()) {
+                        flush(connection);
+                    }
+                }
+
+                isWakeUpRequested.set(false); // cleared before draining, so that a new event wakes up the next select
+                while(drainBatch(batch)) {
+                    try {
+                        send(batch);
+                    } catch(RuntimeException e) { // the batch is lost, but the sink keeps sending the next events
+                        reportFailure(e);
+                    } finally {
+                        batch.clear();
+                    }
+                }
+            }
+        } catch(IOException e) { // the selector failed, the sink can't send events anymore
+            reportFailure(e);
+        } catch(ClosedSelectorException e) {
+            // closed
+        } catch(RuntimeException e) {
+            reportFailure(e);
+        } finally {
+            isClosed = true;
+            for(Connection connection : connections) {
+                closeQuietly(connection.channel);
+            }
+            connections.clear();
+            connectionCount = 0;
+            closeQuietly(serverSocketChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    /**
+     * Moves the frames that wait to be written into the batch, until the batch is at most {@link #MAX_BATCH_LENGTH} bytes, or a single frame.
+     */
+    private boolean drainBatch(List<byte[]> batch) {
+        int length = 0;
+        for(byte[] frame = frames.peek(); frame != null; frame = frames.peek()) { // the writer thread is the only consumer
+            int frameLength = LENGTH_SIZE + frame.length;
+            if(!batch.isEmpty() && length + frameLength > MAX_BATCH_LENGTH) {
+                break;
+            }
+            frames.poll();
+            pendingBytes.addAndGet(-frameLength);
+            batch.add(frame);
+            length += frameLength;
+        }
+        return !batch.isEmpty();
+    }
+
+    private static void reportFailure(Throwable throwable) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, throwable);
+    }
+
+    private void acceptConnection() {
+        try {
+            SocketChannel channel = serverSocketChannel.accept();
+            if(channel == null) {
+                return;
+            }
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        } catch(IOException e) {
+            // the process disconnected before it was accepted
+        }
+    }
+
+    private void read(Connection connection) {
+        try {
+            ByteBuffer buffer = connection.handshake;
+            if(buffer == null) { // the source does not send anything after the handshake, so reading only detects the disconnection
+                buffer = ByteBuffer.allocate(64);
+            }
+            if(connection.channel.read(buffer) < 0) {
+                disconnect(connection);
+                return;
+            }
+            if(connection.handshake != null) {
+                readHandshake(connection);
+            }
+        } catch(IOException e) {
+            disconnect(connection);
+        }
+    }
+
+    /**
+     * The source sends the magic number, the length of the token, and the token. The sink answers with the magic number once it
+     * accepted the source, and sends the events after it.
+     */
+    private void readHandshake(Connection connection) {
+        ByteBuffer handshake = connection.handshake;
+        //noinspection ConstantConditions
+        if(handshake.position() < 2 * LENGTH_SIZE) {
+            return;
+        }
+        int tokenLength = handshake.getInt(LENGTH_SIZE);
+        if(handshake.getInt(0) != MAGIC || tokenLength < 0 || tokenLength > MAX_TOKEN_LENGTH) {
+            disconnect(connection);
+            return;
+        }
+        if(handshake.limit() != 2 * LENGTH_SIZE + tokenLength) {
+            handshake.limit(2 * LENGTH_SIZE + tokenLength);
+        }
+        if(handshake.hasRemaining()) {
+            return;
+        }
+        byte[] receivedToken = new byte[tokenLength];
+        handshake.position(2 * LENGTH_SIZE);
+        handshake.get(receivedToken);
+        if(token != null && !MessageDigest.isEqual(token, receivedToken)) {
+            disconnect(connection);
+            return;
+        }
+
+        connection.handshake = null;
+        connections.add(connection);
+        connectionCount = connections.size();
+        ByteBuffer answer = ByteBuffer.allocate(LENGTH_SIZE);
+        answer.putInt(MAGIC).flip();
+        enqueue(connection, answer);
+    }
+
+    private void send(List<byte[]> batch) {
+        if(connections.isEmpty()) {
+            return;
+        }
+        int length = 0;
+        for(byte[] frame : batch) {
+            length += LENGTH_SIZE + frame.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length); // shared by the connections, each writes it at its own pace
+        for(byte[] frame : batch) {
+            buffer.putInt(frame.length);
+            buffer.put(frame);
+        }
+        buffer.flip();
+        for(Connection connection : new ArrayList<>(connections)) {
+            enqueue(connection, buffer.duplicate());
+        }
+    }
+
+    private void enqueue(Connection connection, ByteBuffer buffer) {
+        if(connection.pendingBytes + buffer.remaining() > MAX_PENDING_BYTES_PER_CONNECTION) {
+            disconnect(connection); // too slow, it would hold back the other processes
+            return;
+        }
+        connection.pendingBuffers.add(buffer);
+        connection.pendingBytes += buffer.remaining();
+        flush(connection);
+    }
+
+    private void flush(Connection connection) {
+        try {
+            ByteBuffer buffer = connection.pendingBuffers.peek();
+            while(buffer != null) {
+                int remaining = buffer.remaining();
+                connection.channel.write(buffer);
+                connection.pendingBytes -= remaining - buffer.remaining();
+                if(buffer.hasRemaining()) {
+                    break; // the socket buffer is full
+                }
+                connection.pendingBuffers.poll();
+                buffer = connection.pendingBuffers.peek();
+            }
+            //noinspection ConstantConditions
+            connection.key.interestOps(buffer == null ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch(IOException e) {
+            disconnect(connection);
+        }
+    }
+
+    private void disconnect(Connection connection) {
+        closeQuietly(connection.channel);
+        connection.pendingBuffers.clear();
+        connection.pendingBytes = 0L;
+        if(connections.remove(connection)) {
+            connectionCount = connections.size();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch(IOException e) {
+            // ignored
+        }
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+
+        @Nullable
+        SelectionKey key;
+
+        @Nullable
+        ByteBuffer handshake = ByteBuffer.allocate(2 * LENGTH_SIZE + MAX_TOKEN_LENGTH);
+
+        final ArrayDeque<ByteBuffer> pendingBuffers = new ArrayDeque<>();
+
+        long pendingBytes = 0L;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The remote event source receives the events sent by a {@link RemoteEventSink} of another process on the same host.
+ *
+ * The events are read by a reader thread, and emitted by a {@link ConcurrentEventEmitter}, so the events received while there are no
+ * observers are enqueued until there is at least one observer. Observers can be registered from any thread, and are called on the
+ * reader thread, so they must be thread-safe. If the serializer or an observer throws, the exception is reported to the uncaught exception
+ * handler of the reader thread, and the next events are still received.
+ *
+ * If the sink requires a token, the source must be created with the same token. A frame that is longer than
+ * {@link RemoteEventSink#MAX_FRAME_LENGTH} is treated as a protocol error, and closes the connection.
+ *
+ * @param <E> the event type
+ */
+public class RemoteEventSource<E> implements EventSource<E>, Closeable {
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final EventSerializer<E> serializer;
+
+    private final SocketChannel socketChannel;
+
+    private final ConcurrentEventEmitter<E> emitter = new ConcurrentEventEmitter<>();
+
+    private volatile boolean isClosed = false;
+
+    /**
+     * Creates a remote event source that connects to the sink listening on the port of the loopback interface.
+     *
+     * Once the constructor returns, the events sent by the sink are received.
+     *
+     * @param port       the port of the sink
+     * @param serializer the serializer of the events
+     * @throws IOException if the sink can't be connected to
+     */
+    public RemoteEventSource(int port, @Nonnull EventSerializer<E> serializer) throws IOException {
+        this(port, serializer, null);
+    }
+
+    /**
+     * Creates a remote event source that connects to the sink listening on the port of the loopback interface, and sends the token.
+     *
+     * Once the constructor returns, the events sent by the sink are received.
+     *
+     * @param port       the port of the sink
+     * @param serializer the serializer of the events
+     * @param token      the token that the sink requires, or null
+     * @throws IOException if the sink can't be connected to, or it did not accept the token
+     */
+    public RemoteEventSource(int port, @Nonnull EventSerializer<E> serializer, @Nullable byte[] token) throws IOException {
+        //noinspection ConstantConditions
+        if(serializer == null) {
+            throw new IllegalArgumentException("Serializer should not be null!");
+        }
+        if(token != null && token.length > RemoteEventSink.MAX_TOKEN_LENGTH) {
+            throw new IllegalArgumentException("Token should not be longer than " + RemoteEventSink.MAX_TOKEN_LENGTH + " bytes!");
+        }
+        this.serializer = serializer;
+        this.socketChannel = SocketChannel.open();
+        try {
+            socketChannel.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+
+            int tokenLength = token == null ? 0 : token.length;
+            ByteBuffer hello = ByteBuffer.allocate(2 * RemoteEventSink.LENGTH_SIZE + tokenLength);
+            hello.putInt(RemoteEventSink.MAGIC).putInt(tokenLength);
+            if(token != null) {
+                hello.put(token);
+            }
+            hello.flip();
+            while(hello.hasRemaining()) {
+                socketChannel.write(hello);
+            }
+
+            ByteBuffer handshake = ByteBuffer.allocate(RemoteEventSink.LENGTH_SIZE);
+            while(handshake.hasRemaining()) {
+                if(socketChannel.read(handshake) < 0) {
+                    throw new EOFException("The sink closed the connection, or did not accept the token!");
+                }
+            }
+            handshake.flip();
+            if(handshake.getInt() != RemoteEventSink.MAGIC) {
+                throw new IOException("The port [" + port + "] does not belong to a remote event sink!");
+            }
+        } catch(IOException e) {
+            socketChannel.close();
+            throw e;
+        }
+
+        Thread readThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readFrames();
+            }
+        }, "event-emitter-source-read-" + port);
+        readThread.setDaemon(true);
+        readThread.start();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Nonnull
+    @Override
+    public final NotificationToken startListening(@Nonnull EventObserver<E> observer) {
+        return emitter.startListening(observer);
+    }
+
+    /**
+     * Disconnects from the sink. Events that are already received are still emitted.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        try {
+            socketChannel.close();
+        } catch(IOException e) {
+            // ignored
+        }
+    }
+
+    private void readFrames() {
+        ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        try {
+            while(!isClosed) {
+                if(socketChannel.read(buffer) < 0) {
+                    return;
+                }
+                buffer.flip();
+                while(buffer.remaining() >= RemoteEventSink.LENGTH_SIZE) {
+                    int length = buffer.getInt(buffer.position());
+                    if(length < 0 || length > RemoteEventSink.MAX_FRAME_LENGTH) {
+                        return; // not a frame of the sink, the connection is closed
+                    }
+                    if(buffer.remaining() < RemoteEventSink.LENGTH_SIZE + length) {
+                        break;
+                    }
+                    byte[] bytes = new byte[length];
+                    buffer.position(buffer.position() + RemoteEventSink.LENGTH_SIZE);
+                    buffer.get(bytes);
+                    try {
+                        emitter.emit(serializer.deserialize(bytes));
+                    } catch(RuntimeException e) { // a bad event or a failing observer must not drop the connection
+                        reportFailure(e);
+                    }
+                }
+                buffer.compact();
+                if(!buffer.hasRemaining()) { // the next frame does not fit
+                    ByteBuffer newBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    newBuffer.put(buffer);
+                    buffer = newBuffer;
+                }
+            }
+        } catch(IOException e) {
+            // disconnected
+        } finally {
+            close();
+        }
+    }
+
+    private static void reportFailure(Throwable throwable) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, throwable);
+    }
+}
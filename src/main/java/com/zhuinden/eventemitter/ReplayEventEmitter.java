@@ -0,0 +1,247 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The replay event emitter lets you register multiple observers, and replays the recent events to each new observer before the live events.
+ *
+ * The recent events are kept in a preallocated ring buffer, bounded by the history size, and optionally by a maximum age. Emitting an
+ * event does not allocate.
+ *
+ * Unlike {@link EventEmitter}, events emitted while there are no observers are not enqueued, they are only kept in the history.
+ *
+ * You can only emit events and listen for events and unregister observers on the thread where you created the emitter.
+ *
+ * @param <E> the event type
+ */
+public class ReplayEventEmitter<E> implements EventSource<E> {
+    private static final long NO_MAX_AGE = -1L;
+
+    private final long threadId = Thread.currentThread().getId();
+
+    private final Object[] history;
+
+    @Nullable
+    private final long[] timestamps;
+
+    private final long maxAgeNanos;
+
+    private final Ticker ticker;
+
+    private long headSequence = 0L;
+
+    private long tailSequence = 0L;
+
+    private final ObserverRegistry<EventObserver<E>> observers = new ObserverRegistry<>();
+
+    /**
+     * Creates a replay event emitter that replays the last events.
+     *
+     * @param historySize the maximum number of events to replay
+     */
+    public ReplayEventEmitter(int historySize) {
+        this(historySize, NO_MAX_AGE, Ticker.SYSTEM);
+    }
+
+    /**
+     * Creates a replay event emitter that replays the last events that are not older than the maximum age.
+     *
+     * @param historySize the maximum number of events to replay
+     * @param maxAge      the maximum age of the events to replay
+     * @param timeUnit    the time unit of the maximum age
+     */
+    public ReplayEventEmitter(int historySize, long maxAge, @Nonnull TimeUnit timeUnit) {
+        this(historySize, maxAge, timeUnit, Ticker.SYSTEM);
+    }
+
+    /**
+     * Creates a replay event emitter that replays the last events that are not older than the maximum age, measured by the ticker.
+     *
+     * @param historySize the maximum number of events to replay
+     * @param maxAge      the maximum age of the events to replay
+     * @param timeUnit    the time unit of the maximum age
+     * @param ticker      the ticker
+     */
+    public ReplayEventEmitter(int historySize, long maxAge, @Nonnull TimeUnit timeUnit, @Nonnull Ticker ticker) {
+        this(historySize, toMaxAgeNanos(maxAge, timeUnit), ticker);
+    }
+
+    private ReplayEventEmitter(int historySize, long maxAgeNanos, @Nonnull Ticker ticker) {
+        if(historySize <= 0) {
+            throw new IllegalArgumentException("History size should be positive!");
+        }
+        //noinspection ConstantConditions
+        if(ticker == null) {
+            throw new IllegalArgumentException("Ticker should not be null!");
+        }
+        this.history = new Object[historySize];
+        this.timestamps = maxAgeNanos == NO_MAX_AGE ? null : new long[historySize];
+        this.maxAgeNanos = maxAgeNanos;
+        this.ticker = ticker;
+    }
+
+    private static long toMaxAgeNanos(long maxAge, TimeUnit timeUnit) {
+        if(maxAge < 0) {
+            throw new IllegalArgumentException("Max age should not be negative!");
+        }
+        //noinspection ConstantConditions
+        if(timeUnit == null) {
+            throw new IllegalArgumentException("Time unit should not be null!");
+        }
+        return timeUnit.toNanos(maxAge);
+    }
+
+    /**
+     * Register to and start listening to the event source for events. The recent events are replayed to the observer before this method returns.
+     *
+     * @param observer the observer
+     * @return the notification token, used to unregister the observer.
+     */
+    @Nonnull
+    @Override
+    public final NotificationToken startListening(@Nonnull EventObserver<E> observer) {
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You should register observers only on the thread where the emitter was created");
+        }
+
+        //noinspection ConstantConditions
+        if(observer == null) {
+            throw new IllegalArgumentException("Observer should not be null!");
+        }
+
+        if(timestamps != null) {
+            removeExpiredEvents(ticker.nanoTime());
+        }
+
+        // the events emitted during the replay are replayed too, the observer is registered once it has seen all of them
+        long sequence = headSequence;
+        while(sequence < tailSequence) {
+            if(sequence < headSequence) { // overwritten or expired during the replay
+                sequence = headSequence;
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            E event = (E) history[(int) (sequence % history.length)];
+            sequence++;
+            observer.onEventReceived(event);
+        }
+
+        final ObserverRegistry.Entry<EventObserver<E>> entry = observers.add(observer);
+
+        return new NotificationToken() {
+            private boolean isDisposed = false;
+
+            @Override
+            public final void stopListening() {
+                if(threadId != Thread.currentThread().getId()) {
+                    throw new IllegalStateException("You should unregister observers only on the thread where the emitter was created");
+                }
+
+                if(isDisposed) {
+                    throw new IllegalStateException("This observer has already stopped listening!");
+                }
+
+                isDisposed = true;
+
+                observers.remove(entry);
+            }
+        };
+    }
+
+    /**
+     * Emits the event to all observers, and keeps it in the history.
+     *
+     * @param event the event
+     */
+    public final void emit(@Nonnull E event) {
+        //noinspection ConstantConditions
+        if(event == null) {
+            throw new IllegalArgumentException("Event should not be null!");
+        }
+
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You can only emit events on the thread where the emitter was created");
+        }
+
+        int index = (int) (tailSequence % history.length);
+        if(timestamps != null) {
+            long now = ticker.nanoTime();
+            removeExpiredEvents(now);
+            timestamps[index] = now;
+        }
+        history[index] = event;
+        tailSequence++;
+        if(tailSequence - headSequence > history.length) {
+            headSequence++;
+        }
+
+        notifyObservers(event);
+    }
+
+    /**
+     * Removes all events from the history.
+     */
+    public final void clearHistory() {
+        if(threadId != Thread.currentThread().getId()) {
+            throw new IllegalStateException("You can only clear the history on the thread where the emitter was created");
+        }
+
+        while(headSequence < tailSequence) {
+            history[(int) (headSequence++ % history.length)] = null;
+        }
+    }
+
+    /**
+     * Returns the number of events in the history. Events older than the maximum age are only removed when an event is emitted, or an observer is registered.
+     *
+     * @return the history event count
+     */
+    public final int getHistoryEventCount() {
+        return (int) (tailSequence - headSequence);
+    }
+
+    private void removeExpiredEvents(long now) {
+        while(headSequence < tailSequence) {
+            int index = (int) (headSequence % history.length);
+            //noinspection ConstantConditions
+            if(now - timestamps[index] <= maxAgeNanos) {
+                return;
+            }
+            history[index] = null;
+            headSequence++;
+        }
+    }
+
+    private void notifyObservers(E event) {
+        observers.beginDispatch();
+        try {
+            ObserverRegistry.Entry<EventObserver<E>>[] slots = observers.getSlots();
+            for(int i = observers.getSlotCount() - 1; i >= 0; i--) {
+                ObserverRegistry.Entry<EventObserver<E>> entry = slots[i];
+                if(entry != null && entry.isActive) {
+                    entry.observer.onEventReceived(event);
+                }
+            }
+        } finally {
+            observers.endDispatch();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+/**
+ * The ticker is a source of elapsed time in nanoseconds, which can be replaced in tests.
+ */
+public interface Ticker {
+    /**
+     * The ticker of {@link System#nanoTime()}.
+     */
+    Ticker SYSTEM = new Ticker() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * Returns the current value of the ticker in nanoseconds. Only the difference between two values is meaningful.
+     *
+     * @return the nanoseconds
+     */
+    long nanoTime();
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An event scheduler with virtual time, which only moves forward when {@link #advanceTimeBy(long, TimeUnit)} is called.
+ *
+ * The tasks run on the thread that advances the time, in the order of their due time, and tasks with the same due time in the order
+ * they were scheduled. This makes time-based operators testable without waiting.
+ */
+public class VirtualTimeScheduler implements EventScheduler {
+    private final PriorityQueue<ScheduledTask> tasks = new PriorityQueue<>();
+
+    private long nowNanos = 0L;
+
+    private long sequence = 0L;
+
+    @Override
+    public synchronized long nanoTime() {
+        return nowNanos;
+    }
+
+    @Nonnull
+    @Override
+    public synchronized EventSource.NotificationToken schedule(@Nonnull Runnable task, long delay, @Nonnull TimeUnit timeUnit) {
+        //noinspection ConstantConditions
+        if(task == null) {
+            throw new IllegalArgumentException("Task should not be null!");
+        }
+        //noinspection ConstantConditions
+        if(timeUnit == null) {
+            throw new IllegalArgumentException("Time unit should not be null!");
+        }
+        ScheduledTask scheduledTask = new ScheduledTask(task, nowNanos + Math.max(0L, timeUnit.toNanos(delay)), sequence++);
+        tasks.add(scheduledTask);
+        return scheduledTask;
+    }
+
+    /**
+     * Moves the virtual time forward, and runs the tasks that become due, including the tasks that they schedule.
+     *
+     * @param delay    the amount of time
+     * @param timeUnit the time unit of the amount
+     */
+    public void advanceTimeBy(long delay, @Nonnull TimeUnit timeUnit) {
+        //noinspection ConstantConditions
+        if(timeUnit == null) {
+            throw new IllegalArgumentException("Time unit should not be null!");
+        }
+        if(delay < 0) {
+            throw new IllegalArgumentException("Delay should not be negative!");
+        }
+        long targetNanos;
+        synchronized(this) {
+            targetNanos = nowNanos + timeUnit.toNanos(delay);
+        }
+        while(true) {
+            ScheduledTask scheduledTask;
+            synchronized(this) {
+                scheduledTask = tasks.peek();
+                if(scheduledTask == null || scheduledTask.dueNanos > targetNanos) {
+                    nowNanos = targetNanos;
+                    return;
+                }
+                tasks.poll();
+                nowNanos = scheduledTask.dueNanos;
+                if(scheduledTask.isCancelled) {
+                    continue;
+                }
+            }
+            scheduledTask.task.run();
+        }
+    }
+
+    private static final class ScheduledTask implements EventSource.NotificationToken, Comparable<ScheduledTask> {
+        final Runnable task;
+
+        final long dueNanos;
+
+        final long sequence;
+
+        volatile boolean isCancelled = false;
+
+        ScheduledTask(Runnable task, long dueNanos, long sequence) {
+            this.task = task;
+            this.dueNanos = dueNanos;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void stopListening() {
+            isCancelled = true; // removed lazily, once it becomes due
+        }
+
+        @Override
+        public int compareTo(@Nonnull ScheduledTask other) {
+            if(dueNanos != other.dueNanos) {
+                return dueNanos < other.dueNanos ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
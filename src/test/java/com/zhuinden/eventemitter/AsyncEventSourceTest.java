@@ -0,0 +1,127 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncEventSourceTest {
+    @Test
+    public void eventsAreDeliveredInOrderOnTheExecutor() throws InterruptedException {
+        EventEmitter<Integer> emitter = new EventEmitter<>();
+
+        ExecutorService executor = AsyncEventSource.createDefaultExecutor();
+        AsyncEventSource<Integer> asyncEventSource = new AsyncEventSource<>(emitter, executor);
+
+        final int eventCount = 1000;
+
+        final List<Integer> firstEvents = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> secondEvents = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        final CountDownLatch latch = new CountDownLatch(2);
+
+        EventSource.NotificationToken first = asyncEventSource.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                threads.add(Thread.currentThread());
+                firstEvents.add(event);
+                if(event == eventCount - 1) {
+                    latch.countDown();
+                }
+            }
+        });
+
+        EventSource.NotificationToken second = asyncEventSource.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                secondEvents.add(event);
+                if(event == eventCount - 1) {
+                    latch.countDown();
+                }
+            }
+        });
+
+        List<Integer> expected = new ArrayList<>();
+        for(int i = 0; i < eventCount; i++) {
+            emitter.emit(i);
+            expected.add(i);
+        }
+
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(firstEvents).isEqualTo(expected);
+        assertThat(secondEvents).isEqualTo(expected);
+        assertThat(threads.contains(Thread.currentThread())).isFalse();
+
+        first.stopListening();
+        second.stopListening();
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void fullMailboxAppliesOverflowPolicy() {
+        EventEmitter<Integer> emitter = new EventEmitter<>();
+
+        final List<Runnable> tasks = new ArrayList<>();
+
+        AsyncEventSource<Integer> asyncEventSource = new AsyncEventSource<>(emitter, new Executor() {
+            @Override
+            public void execute(@Nonnull Runnable command) {
+                tasks.add(command);
+            }
+        }, 2, OverflowPolicy.THROW);
+
+        final List<Integer> events = new ArrayList<>();
+
+        EventSource.NotificationToken token = asyncEventSource.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                events.add(event);
+            }
+        });
+
+        emitter.emit(0);
+        emitter.emit(1);
+
+        try {
+            emitter.emit(2);
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            // OK!
+        }
+
+        assertThat(tasks).hasSize(1);
+
+        tasks.remove(0).run();
+
+        assertThat(events).containsExactly(0, 1);
+
+        token.stopListening();
+    }
+}
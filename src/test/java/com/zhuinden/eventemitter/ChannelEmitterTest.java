@@ -0,0 +1,245 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChannelEmitterTest {
+    @Test
+    public void pendingEventsAreReceivedInEmissionOrderAcrossChannels() {
+        ChannelEmitter channelEmitter = new ChannelEmitter();
+        ChannelEmitter.Channel<String> strings = channelEmitter.createChannel();
+        ChannelEmitter.Channel<Integer> integers = channelEmitter.createChannel();
+
+        final List<Object> events = new ArrayList<>();
+
+        EventSource.NotificationToken stringToken = strings.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                events.add(event);
+            }
+        });
+        EventSource.NotificationToken integerToken = integers.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                events.add(event);
+            }
+        });
+
+        channelEmitter.setPaused(true);
+        strings.emit("a");
+        integers.emit(1);
+        strings.emit("b");
+        integers.emit(2);
+
+        assertThat(events).isEmpty();
+        assertThat(channelEmitter.getPendingEventCount()).isEqualTo(4);
+
+        channelEmitter.setPaused(false);
+
+        assertThat(events).containsExactly("a", 1, "b", 2);
+        assertThat(channelEmitter.getPendingEventCount()).isEqualTo(0);
+
+        strings.emit("c");
+
+        assertThat(events).containsExactly("a", 1, "b", 2, "c");
+
+        stringToken.stopListening();
+        integerToken.stopListening();
+    }
+
+    @Test
+    public void eventsAreEnqueuedUntilTheirChannelHasObservers() {
+        ChannelEmitter channelEmitter = new ChannelEmitter();
+        ChannelEmitter.Channel<String> first = channelEmitter.createChannel();
+        ChannelEmitter.Channel<String> second = channelEmitter.createChannel();
+
+        final List<String> events = new ArrayList<>();
+        EventSource.EventObserver<String> observer = new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                events.add(event);
+            }
+        };
+
+        for(int i = 0; i < 100; i++) {
+            first.emit("first" + i);
+        }
+        second.emit("second");
+
+        EventSource.NotificationToken secondToken = second.startListening(observer);
+
+        assertThat(events).containsExactly("second");
+        assertThat(channelEmitter.getPendingEventCount()).isEqualTo(100);
+
+        second.emit("direct");
+
+        assertThat(events).containsExactly("second", "direct");
+
+        EventSource.NotificationToken firstToken = first.startListening(observer);
+
+        assertThat(events).hasSize(102);
+        assertThat(events.get(2)).isEqualTo("first0");
+        assertThat(events.get(101)).isEqualTo("first99");
+        assertThat(channelEmitter.getPendingEventCount()).isEqualTo(0);
+
+        firstToken.stopListening();
+        secondToken.stopListening();
+
+        try {
+            secondToken.stopListening();
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            // OK!
+        }
+    }
+
+    @Test
+    public void observerRegisteredDuringDrainReceivesEarlierEvents() {
+        ChannelEmitter channelEmitter = new ChannelEmitter();
+        final ChannelEmitter.Channel<String> first = channelEmitter.createChannel();
+        ChannelEmitter.Channel<String> second = channelEmitter.createChannel();
+
+        final List<String> events = new ArrayList<>();
+        final EventSource.EventObserver<String> observer = new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                events.add(event);
+            }
+        };
+
+        first.emit("first");
+        second.emit("second");
+
+        second.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                first.startListening(observer);
+            }
+        });
+
+        assertThat(events).containsExactly("first");
+        assertThat(channelEmitter.getPendingEventCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void channelsAreObservedWhileOtherChannelsHoldEventsThatAreNeverConsumed() {
+        ChannelEmitter channelEmitter = new ChannelEmitter();
+        List<ChannelEmitter.Channel<Integer>> abandonedChannels = new ArrayList<>();
+        for(int i = 0; i < 1000; i++) {
+            ChannelEmitter.Channel<Integer> channel = channelEmitter.createChannel();
+            for(int j = 0; j < 10; j++) {
+                channel.emit(j);
+            }
+            abandonedChannels.add(channel);
+        }
+
+        final List<Integer> events = new ArrayList<>();
+        EventSource.EventObserver<Integer> observer = new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                events.add(event);
+            }
+        };
+
+        ChannelEmitter.Channel<Integer> pendingChannel = channelEmitter.createChannel();
+        pendingChannel.emit(-1);
+        assertThat(pendingChannel.getPendingEventCount()).isEqualTo(1);
+
+        List<EventSource.NotificationToken> tokens = new ArrayList<>();
+        for(int i = 0; i < 1000; i++) {
+            ChannelEmitter.Channel<Integer> channel = channelEmitter.createChannel();
+            tokens.add(channel.startListening(observer));
+            channel.emit(i);
+            channelEmitter.setPaused(true);
+            channelEmitter.setPaused(false);
+        }
+        tokens.add(pendingChannel.startListening(observer));
+
+        assertThat(events).hasSize(1001);
+        assertThat(events.get(999)).isEqualTo(999);
+        assertThat(events.get(1000)).isEqualTo(-1);
+        assertThat(pendingChannel.getPendingEventCount()).isEqualTo(0);
+        assertThat(channelEmitter.getPendingEventCount()).isEqualTo(10000);
+
+        for(ChannelEmitter.Channel<Integer> channel : abandonedChannels) {
+            channel.discardPendingEvents();
+            assertThat(channel.getPendingEventCount()).isEqualTo(0);
+        }
+
+        assertThat(channelEmitter.getPendingEventCount()).isEqualTo(0);
+
+        ChannelEmitter.Channel<Integer> lateChannel = channelEmitter.createChannel();
+        lateChannel.emit(1000);
+        tokens.add(lateChannel.startListening(observer));
+
+        assertThat(events).hasSize(1002);
+        assertThat(events.get(1001)).isEqualTo(1000);
+
+        for(EventSource.NotificationToken token : tokens) {
+            token.stopListening();
+        }
+    }
+
+    @Test
+    public void boundedChannelEmitterAppliesOverflowPolicy() {
+        ChannelEmitter channelEmitter = new ChannelEmitter(2, OverflowPolicy.DROP_OLDEST);
+        ChannelEmitter.Channel<String> first = channelEmitter.createChannel();
+        ChannelEmitter.Channel<String> second = channelEmitter.createChannel();
+
+        first.emit("a");
+        second.emit("b");
+        first.emit("c");
+
+        assertThat(channelEmitter.getPendingEventCount()).isEqualTo(2);
+        assertThat(channelEmitter.getDroppedEventCount()).isEqualTo(1L);
+        assertThat(first.getPendingEventCount()).isEqualTo(1);
+
+        final List<String> events = new ArrayList<>();
+        EventSource.EventObserver<String> observer = new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                events.add(event);
+            }
+        };
+        EventSource.NotificationToken firstToken = first.startListening(observer);
+        EventSource.NotificationToken secondToken = second.startListening(observer);
+
+        assertThat(events).containsExactly("c", "b");
+
+        ChannelEmitter throwingChannelEmitter = new ChannelEmitter(1, OverflowPolicy.THROW);
+        ChannelEmitter.Channel<String> channel = throwingChannelEmitter.createChannel();
+        channel.emit("a");
+        try {
+            channel.emit("b");
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            // OK!
+        }
+        assertThat(throwingChannelEmitter.getPendingEventCount()).isEqualTo(1);
+
+        firstToken.stopListening();
+        secondToken.stopListening();
+    }
+}
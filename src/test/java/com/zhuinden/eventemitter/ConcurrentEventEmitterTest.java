@@ -0,0 +1,191 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConcurrentEventEmitterTest {
+    @Test
+    public void eventsAreEnqueuedUntilThereIsAnObserver() {
+        ConcurrentEventEmitter<String> emitter = new ConcurrentEventEmitter<>();
+
+        emitter.emit("hello");
+        emitter.emit("world");
+
+        final List<String> events = new ArrayList<>();
+
+        EventSource.NotificationToken token = emitter.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                events.add(event);
+            }
+        });
+
+        assertThat(events).containsExactly("hello", "world");
+
+        emitter.emit("!");
+
+        assertThat(events).containsExactly("hello", "world", "!");
+
+        token.stopListening();
+
+        emitter.emit("later");
+
+        assertThat(events).containsExactly("hello", "world", "!");
+    }
+
+    @Test
+    public void setPausedWorks() {
+        ConcurrentEventEmitter<String> emitter = new ConcurrentEventEmitter<>();
+
+        final List<String> events = new ArrayList<>();
+
+        EventSource.NotificationToken token = emitter.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                events.add(event);
+            }
+        });
+
+        emitter.setPaused(true);
+        emitter.emit("hello");
+
+        assertThat(events).isEmpty();
+
+        emitter.setPaused(false);
+
+        assertThat(events).containsExactly("hello");
+
+        token.stopListening();
+    }
+
+    @Test
+    public void multipleUnregisterAttemptsThrow() {
+        ConcurrentEventEmitter<String> emitter = new ConcurrentEventEmitter<>();
+
+        EventSource.NotificationToken token = emitter.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                // kweh
+            }
+        });
+
+        token.stopListening();
+
+        try {
+            token.stopListening();
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            // OK!
+        }
+    }
+
+    @Test
+    public void drainContinuesAfterObserverThrows() {
+        ConcurrentEventEmitter<Integer> emitter = new ConcurrentEventEmitter<>();
+
+        emitter.emit(1);
+        emitter.emit(2);
+        emitter.emit(3);
+
+        final List<Integer> events = new ArrayList<>();
+
+        try {
+            emitter.startListening(new EventSource.EventObserver<Integer>() {
+                @Override
+                public void onEventReceived(@Nonnull Integer event) {
+                    events.add(event);
+                    if(event == 2) {
+                        throw new IllegalStateException("kweh");
+                    }
+                }
+            });
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            // OK!
+        }
+
+        assertThat(events).containsExactly(1, 2, 3);
+
+        emitter.emit(4);
+
+        assertThat(events).containsExactly(1, 2, 3, 4);
+    }
+
+    @Test
+    public void eventsCanBeEmittedFromMultipleThreads() throws InterruptedException {
+        final ConcurrentEventEmitter<Integer> emitter = new ConcurrentEventEmitter<>();
+
+        final int threadCount = 8;
+        final int eventsPerThread = 10000;
+
+        final AtomicInteger received = new AtomicInteger();
+        final List<Integer> lastEventPerThread = Collections.synchronizedList(new ArrayList<Integer>());
+
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> producers = new ArrayList<>();
+        for(int t = 0; t < threadCount; t++) {
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch(InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    for(int i = 0; i < eventsPerThread; i++) {
+                        emitter.emit(i);
+                    }
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+
+        start.countDown();
+
+        // register while the producers are running, the enqueued events must not be lost
+        emitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                received.incrementAndGet();
+                if(event == eventsPerThread - 1) {
+                    lastEventPerThread.add(event);
+                }
+            }
+        });
+
+        // once the producers ended, every drain they started has returned
+        for(Thread producer : producers) {
+            producer.join();
+        }
+
+        assertThat(received.get()).isEqualTo(threadCount * eventsPerThread);
+        assertThat(lastEventPerThread).hasSize(threadCount);
+    }
+}
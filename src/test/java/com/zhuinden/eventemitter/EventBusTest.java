@@ -0,0 +1,144 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventBusTest {
+    interface Tagged {
+    }
+
+    static class Animal {
+    }
+
+    static class Dog
+        extends Animal
+        implements Tagged {
+    }
+
+    @Test
+    public void eventsAreRoutedToSupertypesAndInterfaces() {
+        EventBus eventBus = new EventBus();
+
+        final List<String> calls = new ArrayList<>();
+
+        EventSource.NotificationToken dogs = eventBus.startListening(Dog.class, new EventSource.EventObserver<Dog>() {
+            @Override
+            public void onEventReceived(@Nonnull Dog event) {
+                calls.add("dog");
+            }
+        });
+
+        EventSource.NotificationToken animals = eventBus.startListening(Animal.class, new EventSource.EventObserver<Animal>() {
+            @Override
+            public void onEventReceived(@Nonnull Animal event) {
+                calls.add("animal");
+            }
+        });
+
+        EventSource.NotificationToken tagged = eventBus.startListening(Tagged.class, new EventSource.EventObserver<Object>() {
+            @Override
+            public void onEventReceived(@Nonnull Object event) {
+                calls.add("tagged");
+            }
+        });
+
+        EventSource.NotificationToken everything = eventBus.startListening(new EventSource.EventObserver<Object>() {
+            @Override
+            public void onEventReceived(@Nonnull Object event) {
+                calls.add("object");
+            }
+        });
+
+        eventBus.emit(new Dog());
+
+        assertThat(calls).containsExactly("dog", "animal", "tagged", "object");
+
+        calls.clear();
+
+        eventBus.emit(new Animal());
+        eventBus.emit("hello");
+
+        assertThat(calls).containsExactly("animal", "object", "object");
+
+        calls.clear();
+
+        animals.stopListening();
+        everything.stopListening();
+
+        eventBus.emit(new Dog());
+
+        assertThat(calls).containsExactly("dog", "tagged");
+
+        dogs.stopListening();
+        tagged.stopListening();
+
+        calls.clear();
+
+        eventBus.emit(new Dog());
+
+        EventSource.NotificationToken lateDogs = eventBus.startListening(Dog.class, new EventSource.EventObserver<Dog>() {
+            @Override
+            public void onEventReceived(@Nonnull Dog event) {
+                calls.add("dog");
+            }
+        });
+
+        assertThat(calls).isEmpty(); // events without observers are not enqueued
+
+        lateDogs.stopListening();
+    }
+
+    @Test
+    public void observersRegisteredDuringDispatchReceiveTheNextEvent() {
+        final EventBus eventBus = new EventBus();
+
+        final List<String> calls = new ArrayList<>();
+
+        final List<EventSource.NotificationToken> tokens = new ArrayList<>();
+
+        tokens.add(eventBus.startListening(String.class, new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                calls.add("string " + event);
+                if(tokens.size() == 1) {
+                    tokens.add(eventBus.startListening(CharSequence.class, new EventSource.EventObserver<CharSequence>() {
+                        @Override
+                        public void onEventReceived(@Nonnull CharSequence event) {
+                            calls.add("sequence " + event);
+                        }
+                    }));
+                }
+            }
+        }));
+
+        eventBus.emit("a");
+        eventBus.emit("b");
+
+        assertThat(calls).containsExactly("string a", "string b", "sequence b");
+
+        for(EventSource.NotificationToken token : tokens) {
+            token.stopListening();
+        }
+    }
+}
@@ -20,8 +20,17 @@ import javax.annotation.Nonnull;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -366,4 +375,1211 @@ public class EventEmitterTest {
 
         assertThat(lastListener).contains(new Events.Sixth());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void observersAreNotifiedInReverseRegistrationOrder() {
+        EventEmitter<Events> eventEmitter = new EventEmitter<>();
+
+        final List<String> calls = new LinkedList<>();
+
+        CompositeNotificationToken compositeNotificationToken = new CompositeNotificationToken();
+
+        for(int i = 0; i < 3; i++) {
+            final String name = "observer" + i;
+            compositeNotificationToken.add(eventEmitter.startListening(new EventSource.EventObserver<Events>() {
+                @Override
+                public void onEventReceived(@Nonnull Events event) {
+                    calls.add(name);
+                }
+            }));
+        }
+
+        eventEmitter.emit(new Events.First());
+
+        assertThat(calls).containsExactly("observer2", "observer1", "observer0");
+
+        compositeNotificationToken.stopListening();
+    }
+
+    @Test
+    public void observersCanStopListeningDuringDispatch() {
+        final EventEmitter<Events> eventEmitter = new EventEmitter<>();
+
+        final List<Events> firstListener = new LinkedList<>();
+        final List<Events> secondListener = new LinkedList<>();
+        final List<Events> thirdListener = new LinkedList<>();
+
+        final EventSource.NotificationToken first = eventEmitter.startListening(new EventSource.EventObserver<Events>() {
+            @Override
+            public void onEventReceived(@Nonnull Events event) {
+                firstListener.add(event);
+            }
+        });
+
+        final List<EventSource.NotificationToken> tokens = new LinkedList<>();
+
+        tokens.add(eventEmitter.startListening(new EventSource.EventObserver<Events>() {
+            @Override
+            public void onEventReceived(@Nonnull Events event) {
+                secondListener.add(event);
+                tokens.remove(0).stopListening(); // itself
+                first.stopListening(); // not yet notified
+                tokens.add(eventEmitter.startListening(new EventSource.EventObserver<Events>() {
+                    @Override
+                    public void onEventReceived(@Nonnull Events event) {
+                        thirdListener.add(event);
+                    }
+                }));
+            }
+        }));
+
+        eventEmitter.emit(new Events.First());
+
+        assertThat(firstListener).isEmpty();
+        assertThat(secondListener).containsExactly(new Events.First());
+        assertThat(thirdListener).isEmpty();
+
+        eventEmitter.emit(new Events.Second());
+
+        assertThat(firstListener).isEmpty();
+        assertThat(secondListener).containsExactly(new Events.First());
+        assertThat(thirdListener).containsExactly(new Events.Second());
+
+        tokens.remove(0).stopListening();
+    }
+
+    @Test
+    public void boundedPendingEventQueueDropsOldest() {
+        EventEmitter<Integer> eventEmitter = new EventEmitter.Builder<Integer>()
+            .setCapacity(3)
+            .setOverflowPolicy(OverflowPolicy.DROP_OLDEST)
+            .build();
+
+        for(int i = 0; i < 5; i++) {
+            eventEmitter.emit(i);
+        }
+
+        assertThat(eventEmitter.getPendingEventCount()).isEqualTo(3);
+        assertThat(eventEmitter.getDroppedEventCount()).isEqualTo(2L);
+
+        final List<Integer> events = new LinkedList<>();
+
+        EventSource.NotificationToken token = eventEmitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                events.add(event);
+            }
+        });
+
+        assertThat(events).containsExactly(2, 3, 4);
+        assertThat(eventEmitter.getPendingEventCount()).isEqualTo(0);
+
+        token.stopListening();
+    }
+
+    @Test
+    public void boundedPendingEventQueueDropsNewest() {
+        EventEmitter<Integer> eventEmitter = new EventEmitter.Builder<Integer>()
+            .setCapacity(3)
+            .setOverflowPolicy(OverflowPolicy.DROP_NEWEST)
+            .build();
+
+        eventEmitter.setPaused(true);
+
+        final List<Integer> events = new LinkedList<>();
+
+        EventSource.NotificationToken token = eventEmitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                events.add(event);
+            }
+        });
+
+        for(int i = 0; i < 5; i++) {
+            eventEmitter.emit(i);
+        }
+
+        assertThat(eventEmitter.getDroppedEventCount()).isEqualTo(2L);
+
+        eventEmitter.setPaused(false);
+
+        assertThat(events).containsExactly(0, 1, 2);
+
+        token.stopListening();
+    }
+
+    @Test
+    public void boundedPendingEventQueueThrows() {
+        EventEmitter<Integer> eventEmitter = new EventEmitter.Builder<Integer>()
+            .setCapacity(1)
+            .setOverflowPolicy(OverflowPolicy.THROW)
+            .build();
+
+        eventEmitter.emit(0);
+
+        try {
+            eventEmitter.emit(1);
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            // OK!
+        }
+
+        assertThat(eventEmitter.getPendingEventCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void boundedPendingEventQueueThrowsBeforeAddingBatchThatDoesNotFit() {
+        EventEmitter<Integer> eventEmitter = new EventEmitter.Builder<Integer>()
+            .setCapacity(2)
+            .setOverflowPolicy(OverflowPolicy.THROW)
+            .build();
+
+        eventEmitter.emit(0);
+
+        try {
+            eventEmitter.emitAll(Arrays.asList(1, 2));
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            // OK!
+        }
+
+        assertThat(eventEmitter.getPendingEventCount()).isEqualTo(1);
+
+        eventEmitter.emitAll(Arrays.asList(1));
+
+        assertThat(eventEmitter.getPendingEventCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void boundedPendingEventQueueCoalescesByKey() {
+        EventEmitter<String> eventEmitter = new EventEmitter.Builder<String>()
+            .setCapacity(2)
+            .setOverflowPolicy(OverflowPolicy.COALESCE_BY_KEY)
+            .setKeySelector(new KeySelector<String, Character>() {
+                @Nonnull
+                @Override
+                public Character getKey(@Nonnull String event) {
+                    return event.charAt(0);
+                }
+            })
+            .build();
+
+        eventEmitter.emit("a1");
+        eventEmitter.emit("b1");
+        eventEmitter.emit("a2"); // replaces a1
+        eventEmitter.emit("c1"); // drops a2, as there is no pending event with key 'c'
+
+        assertThat(eventEmitter.getDroppedEventCount()).isEqualTo(2L);
+
+        final List<String> events = new LinkedList<>();
+
+        EventSource.NotificationToken token = eventEmitter.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                events.add(event);
+            }
+        });
+
+        assertThat(events).containsExactly("b1", "c1");
+
+        token.stopListening();
+    }
+
+    @Test
+    public void emitAllDeliversBatchesToBatchObservers() {
+        EventEmitter<Integer> eventEmitter = new EventEmitter<>();
+
+        final List<Integer> events = new LinkedList<>();
+        final List<List<Integer>> batches = new LinkedList<>();
+
+        EventSource.NotificationToken first = eventEmitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                events.add(event);
+            }
+        });
+
+        EventSource.NotificationToken second = eventEmitter.startListening(new BatchEventObserver<Integer>() {
+            @Override
+            public void onEventsReceived(@Nonnull List<Integer> events) {
+                batches.add(new ArrayList<>(events));
+            }
+
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                batches.add(Collections.singletonList(event));
+            }
+        });
+
+        eventEmitter.emitAll(Arrays.asList(1, 2, 3));
+        eventEmitter.emitAll(new Integer[]{4, 5});
+        eventEmitter.emit(6);
+
+        assertThat(events).containsExactly(1, 2, 3, 4, 5, 6);
+        assertThat(batches).containsExactly(Arrays.asList(1, 2, 3), Arrays.asList(4, 5), Collections.singletonList(6));
+
+        first.stopListening();
+        second.stopListening();
+    }
+
+    @Test
+    public void emitAllEnqueuesWhenThereAreNoObservers() {
+        EventEmitter<Integer> eventEmitter = new EventEmitter<>();
+
+        eventEmitter.emitAll(Arrays.asList(1, 2, 3));
+
+        assertThat(eventEmitter.getPendingEventCount()).isEqualTo(3);
+
+        final List<Integer> events = new LinkedList<>();
+
+        EventSource.NotificationToken token = eventEmitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                events.add(event);
+            }
+        });
+
+        assertThat(events).containsExactly(1, 2, 3);
+
+        token.stopListening();
+    }
+
+    @Test
+    public void emitAllDisallowsNullEvents() {
+        EventEmitter<Integer> eventEmitter = new EventEmitter<>();
+
+        try {
+            eventEmitter.emitAll(Arrays.asList(1, null, 3));
+            Assert.fail();
+        } catch(IllegalArgumentException e) {
+            // OK!
+        }
+
+        assertThat(eventEmitter.getPendingEventCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void metricsAreReported() {
+        CountingEmitterMetrics metrics = new CountingEmitterMetrics();
+
+        EventEmitter<Events> eventEmitter = new EventEmitter.Builder<Events>()
+            .setMetrics(metrics)
+            .build();
+
+        eventEmitter.emit(new Events.First());
+        eventEmitter.emit(new Events.Second());
+
+        assertThat(metrics.getEnqueuedEventCount()).isEqualTo(2L);
+        assertThat(metrics.getPendingEventCount()).isEqualTo(2);
+
+        EventSource.EventObserver<Events> observer = new EventSource.EventObserver<Events>() {
+            @Override
+            public void onEventReceived(@Nonnull Events event) {
+                // kweh
+            }
+        };
+
+        EventSource.NotificationToken token = eventEmitter.startListening(observer);
+
+        assertThat(metrics.getPendingDispatchedEventCount()).isEqualTo(2L);
+        assertThat(metrics.getPendingEventCount()).isEqualTo(0);
+
+        eventEmitter.emit(new Events.Third());
+
+        eventEmitter.setPaused(true);
+        eventEmitter.setPaused(false);
+
+        assertThat(metrics.getEmittedEventCount()).isEqualTo(3L);
+        assertThat(metrics.getDispatchedEventCount()).isEqualTo(1L);
+        assertThat(metrics.getTotalPauseNanos()).isGreaterThanOrEqualTo(0L);
+        assertThat(metrics.getDispatchTimeHistogram().getCount()).isEqualTo(3L);
+        //noinspection ConstantConditions
+        assertThat(metrics.getDispatchTimeHistogram(observer).getCount()).isEqualTo(3L);
+
+        token.stopListening();
+    }
+
+    @Test
+    public void metricsAreReportedForFilteredAndWeakObservers() {
+        CountingEmitterMetrics metrics = new CountingEmitterMetrics();
+
+        EventEmitter<String> eventEmitter = new EventEmitter.Builder<String>()
+            .setMetrics(metrics)
+            .build();
+
+        EventSource.EventObserver<String> filteredObserver = new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                // kweh
+            }
+        };
+        EventSource.EventObserver<String> weakObserver = new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                // kweh
+            }
+        };
+
+        EventSource.NotificationToken filteredToken = eventEmitter.startListening(filteredObserver, new EventFilter<String>() {
+            @Override
+            public boolean accept(@Nonnull String event) {
+                return true;
+            }
+        });
+        EventSource.NotificationToken weakToken = eventEmitter.startListeningWeakly(weakObserver);
+
+        eventEmitter.emit("hello");
+        eventEmitter.emitAll(Arrays.asList("a", "b"));
+
+        //noinspection ConstantConditions
+        assertThat(metrics.getDispatchTimeHistogram(filteredObserver).getCount()).isEqualTo(3L);
+        //noinspection ConstantConditions
+        assertThat(metrics.getDispatchTimeHistogram(weakObserver).getCount()).isEqualTo(3L);
+
+        filteredToken.stopListening();
+        weakToken.stopListening();
+    }
+
+    @Test
+    public void dispatchTimeHistogramReportsPercentiles() {
+        DispatchTimeHistogram histogram = new DispatchTimeHistogram();
+
+        for(int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(100L);
+        assertThat(histogram.getMaxNanos()).isEqualTo(100000L);
+        assertThat(histogram.getValueAtPercentile(50)).isGreaterThanOrEqualTo(48000L);
+        assertThat(histogram.getValueAtPercentile(50)).isLessThanOrEqualTo(50000L);
+        assertThat(histogram.getValueAtPercentile(100)).isGreaterThanOrEqualTo(97000L);
+    }
+
+    @Test
+    public void conflationKeepsNewestEventPerKeyInFirstArrivalOrder() {
+        EventEmitter<String> eventEmitter = new EventEmitter.Builder<String>()
+            .setConflation(new KeySelector<String, Character>() {
+                @Nonnull
+                @Override
+                public Character getKey(@Nonnull String event) {
+                    return event.charAt(0);
+                }
+            })
+            .build();
+
+        for(int i = 0; i < 100; i++) {
+            eventEmitter.emit("a" + i);
+            eventEmitter.emit("b" + i);
+        }
+        eventEmitter.emit("c0");
+        eventEmitter.emit("a100");
+
+        assertThat(eventEmitter.getPendingEventCount()).isEqualTo(3);
+
+        final List<String> events = new LinkedList<>();
+
+        EventSource.NotificationToken token = eventEmitter.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                events.add(event);
+            }
+        });
+
+        assertThat(events).containsExactly("a100", "b99", "c0");
+
+        eventEmitter.setPaused(true);
+        eventEmitter.emit("a101");
+        eventEmitter.emit("a102");
+        eventEmitter.setPaused(false);
+
+        assertThat(events).containsExactly("a100", "b99", "c0", "a102");
+
+        token.stopListening();
+    }
+
+    @Test
+    public void conflationCanMergeEvents() {
+        EventEmitter<Integer> eventEmitter = new EventEmitter.Builder<Integer>()
+            .setConflation(new KeySelector<Integer, Integer>() {
+                @Nonnull
+                @Override
+                public Integer getKey(@Nonnull Integer event) {
+                    return event % 2;
+                }
+            }, new EventMerger<Integer>() {
+                @Nonnull
+                @Override
+                public Integer merge(@Nonnull Integer pendingEvent, @Nonnull Integer newEvent) {
+                    return pendingEvent + newEvent;
+                }
+            })
+            .build();
+
+        for(int i = 1; i <= 6; i++) {
+            eventEmitter.emit(i);
+        }
+
+        final List<Integer> events = new LinkedList<>();
+
+        EventSource.NotificationToken token = eventEmitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                events.add(event);
+            }
+        });
+
+        assertThat(events).containsExactly(1 + 3 + 5, 2 + 4 + 6);
+
+        token.stopListening();
+    }
+
+    @Test
+    public void filteredObserverOnlyReceivesAcceptedEvents() {
+        EventEmitter<Integer> eventEmitter = new EventEmitter<>();
+
+        final List<Integer> events = new LinkedList<>();
+
+        EventSource.NotificationToken token = eventEmitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                events.add(event);
+            }
+        }, new EventFilter<Integer>() {
+            @Override
+            public boolean accept(@Nonnull Integer event) {
+                return event % 2 == 0;
+            }
+        });
+
+        eventEmitter.emitAll(Arrays.asList(1, 2, 3, 4));
+        eventEmitter.emit(5);
+        eventEmitter.emit(6);
+
+        assertThat(events).containsExactly(2, 4, 6);
+
+        token.stopListening();
+    }
+
+    @Test
+    public void indexedObserverOnlyReceivesEventsWithItsKey() {
+        EventEmitter<String> eventEmitter = new EventEmitter<>();
+
+        KeySelector<String, Character> firstLetter = new KeySelector<String, Character>() {
+            @Nonnull
+            @Override
+            public Character getKey(@Nonnull String event) {
+                return event.charAt(0);
+            }
+        };
+
+        eventEmitter.emit("a0");
+
+        final List<String> aEvents = new LinkedList<>();
+        final List<String> bEvents = new LinkedList<>();
+        final List<String> allEvents = new LinkedList<>();
+
+        EventSource.NotificationToken aToken = eventEmitter.startListening(firstLetter, 'a', new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                aEvents.add(event);
+            }
+        });
+
+        assertThat(aEvents).containsExactly("a0");
+
+        EventSource.NotificationToken bToken = eventEmitter.startListening(firstLetter, 'b', new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                bEvents.add(event);
+            }
+        });
+
+        EventSource.NotificationToken allToken = eventEmitter.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                allEvents.add(event);
+            }
+        });
+
+        eventEmitter.emit("a1");
+        eventEmitter.emit("b1");
+        eventEmitter.emitAll(new String[]{"c1", "b2", "a2"});
+
+        assertThat(aEvents).containsExactly("a0", "a1", "a2");
+        assertThat(bEvents).containsExactly("b1", "b2");
+        assertThat(allEvents).containsExactly("a1", "b1", "c1", "b2", "a2");
+
+        aToken.stopListening();
+        bToken.stopListening();
+
+        assertThat(eventEmitter.getObserverCount()).isEqualTo(1);
+
+        allToken.stopListening();
+
+        eventEmitter.emit("a3");
+
+        assertThat(eventEmitter.getPendingEventCount()).isEqualTo(1);
+        assertThat(aEvents).containsExactly("a0", "a1", "a2");
+
+        try {
+            aToken.stopListening();
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            // OK!
+        }
+    }
+
+    @Test
+    public void durablePendingQueueIsRestored() throws IOException {
+        File directory = Files.createTempDirectory("event-emitter").toFile();
+        try {
+            EventSerializer<String> serializer = new EventSerializer<String>() {
+                @Nonnull
+                @Override
+                public byte[] serialize(@Nonnull String event) {
+                    return event.getBytes(StandardCharsets.UTF_8);
+                }
+
+                @Nonnull
+                @Override
+                public String deserialize(@Nonnull byte[] bytes) {
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+            };
+
+            EventEmitter<String> eventEmitter = new EventEmitter.Builder<String>()
+                .setDurablePendingQueue(directory, serializer, 64)
+                .build();
+
+            List<String> expected = new ArrayList<>();
+            for(int i = 0; i < 100; i++) {
+                eventEmitter.emit("event" + i);
+                expected.add("event" + i);
+            }
+            eventEmitter.emit("a very long event that does not fit into a single segment of 64 bytes");
+            expected.add("a very long event that does not fit into a single segment of 64 bytes");
+
+            //noinspection ConstantConditions
+            assertThat(directory.listFiles().length > 1).isTrue();
+
+            EventEmitter<String> restoredEventEmitter = new EventEmitter.Builder<String>()
+                .setDurablePendingQueue(directory, serializer, 64)
+                .build();
+
+            assertThat(restoredEventEmitter.getPendingEventCount()).isEqualTo(101);
+
+            final List<String> events = new ArrayList<>();
+
+            EventSource.NotificationToken token = restoredEventEmitter.startListening(new EventSource.EventObserver<String>() {
+                @Override
+                public void onEventReceived(@Nonnull String event) {
+                    events.add(event);
+                }
+            });
+
+            assertThat(events).isEqualTo(expected);
+            assertThat(restoredEventEmitter.getPendingEventCount()).isEqualTo(0);
+            //noinspection ConstantConditions
+            assertThat(directory.listFiles().length).isEqualTo(1);
+
+            token.stopListening();
+
+            restoredEventEmitter.emit("hello");
+
+            assertThat(new EventEmitter.Builder<String>()
+                .setDurablePendingQueue(directory, serializer, 64)
+                .build()
+                .getPendingEventCount()).isEqualTo(1);
+        } finally {
+            //noinspection ConstantConditions
+            for(File file : directory.listFiles()) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+            //noinspection ResultOfMethodCallIgnored
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void durablePendingQueueSkipsEventsThatCanNotBeDeserialized() throws IOException {
+        File directory = Files.createTempDirectory("event-emitter").toFile();
+        try {
+            EventSerializer<String> serializer = new EventSerializer<String>() {
+                @Nonnull
+                @Override
+                public byte[] serialize(@Nonnull String event) {
+                    return event.getBytes(StandardCharsets.UTF_8);
+                }
+
+                @Nonnull
+                @Override
+                public String deserialize(@Nonnull byte[] bytes) {
+                    String event = new String(bytes, StandardCharsets.UTF_8);
+                    if("poison".equals(event)) {
+                        throw new IllegalArgumentException("Poison!");
+                    }
+                    //noinspection ConstantConditions
+                    return "null".equals(event) ? null : event;
+                }
+            };
+
+            EventEmitter<String> eventEmitter = new EventEmitter.Builder<String>()
+                .setDurablePendingQueue(directory, serializer, 64)
+                .build();
+
+            eventEmitter.emit("a");
+            eventEmitter.emit("poison");
+            eventEmitter.emit("b");
+            eventEmitter.emit("null");
+            eventEmitter.emit("c");
+
+            final List<String> events = new ArrayList<>();
+
+            EventSource.EventObserver<String> observer = new EventSource.EventObserver<String>() {
+                @Override
+                public void onEventReceived(@Nonnull String event) {
+                    events.add(event);
+                }
+            };
+
+            EventEmitter<String> restoredEventEmitter = new EventEmitter.Builder<String>()
+                .setDurablePendingQueue(directory, serializer, 64)
+                .build();
+            EventSource.NotificationToken token = restoredEventEmitter.registerObserver(observer);
+
+            try {
+                restoredEventEmitter.dispatchPendingEvents();
+                Assert.fail();
+            } catch(IllegalArgumentException e) {
+                // OK!
+            }
+
+            assertThat(events).containsExactly("a");
+            assertThat(restoredEventEmitter.getPendingEventCount()).isEqualTo(3);
+
+            token.stopListening();
+
+            EventEmitter<String> restartedEventEmitter = new EventEmitter.Builder<String>()
+                .setDurablePendingQueue(directory, serializer, 64)
+                .build();
+            token = restartedEventEmitter.registerObserver(observer);
+
+            assertThat(restartedEventEmitter.getPendingEventCount()).isEqualTo(3);
+
+            try {
+                restartedEventEmitter.dispatchPendingEvents();
+                Assert.fail();
+            } catch(IllegalStateException e) {
+                // OK!
+            }
+
+            restartedEventEmitter.dispatchPendingEvents();
+
+            assertThat(events).containsExactly("a", "b", "c");
+            assertThat(restartedEventEmitter.getPendingEventCount()).isEqualTo(0);
+
+            token.stopListening();
+        } finally {
+            //noinspection ConstantConditions
+            for(File file : directory.listFiles()) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+            //noinspection ResultOfMethodCallIgnored
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void durablePendingQueueRejectsCorruptedRecordLength() throws IOException {
+        File directory = Files.createTempDirectory("event-emitter").toFile();
+        try {
+            EventSerializer<String> serializer = new EventSerializer<String>() {
+                @Nonnull
+                @Override
+                public byte[] serialize(@Nonnull String event) {
+                    return event.getBytes(StandardCharsets.UTF_8);
+                }
+
+                @Nonnull
+                @Override
+                public String deserialize(@Nonnull byte[] bytes) {
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+            };
+
+            new EventEmitter.Builder<String>()
+                .setDurablePendingQueue(directory, serializer, 64)
+                .build()
+                .emit("hello");
+
+            //noinspection ConstantConditions
+            RandomAccessFile segment = new RandomAccessFile(directory.listFiles()[0], "rw");
+            try {
+                segment.seek(MappedEventQueue.HEADER_SIZE);
+                segment.writeInt(1000); // longer than the records of the segment
+            } finally {
+                segment.close();
+            }
+
+            try {
+                new EventEmitter.Builder<String>()
+                    .setDurablePendingQueue(directory, serializer, 64)
+                    .build();
+                Assert.fail();
+            } catch(IllegalStateException e) {
+                // OK!
+            }
+        } finally {
+            //noinspection ConstantConditions
+            for(File file : directory.listFiles()) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+            //noinspection ResultOfMethodCallIgnored
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void weakObserverIsPurgedOnceCollected() throws InterruptedException {
+        EventEmitter<String> eventEmitter = new EventEmitter<>();
+
+        final List<String> events = new LinkedList<>();
+
+        EventSource.EventObserver<String> observer = new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                events.add(event);
+            }
+        };
+
+        EventSource.NotificationToken token = eventEmitter.startListeningWeakly(observer);
+
+        eventEmitter.startListeningWeakly(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                // not reachable from anywhere
+            }
+        });
+
+        for(int i = 0; i < 100 && eventEmitter.getPurgedObserverCount() == 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+            eventEmitter.emit("hello");
+        }
+
+        assertThat(eventEmitter.getPurgedObserverCount()).isEqualTo(1L);
+        assertThat(eventEmitter.getObserverCount()).isEqualTo(1);
+        assertThat(events.isEmpty()).isFalse();
+
+        token.stopListening();
+
+        eventEmitter.emit("world");
+
+        assertThat(eventEmitter.getPendingEventCount()).isEqualTo(1);
+        assertThat(observer).isNotNull(); // keeps the observer strongly reachable until the end of the test
+    }
+
+    @Test
+    public void compositeNotificationTokenCanRemoveSingleTokensAndBeNested() {
+        EventEmitter<String> eventEmitter = new EventEmitter<>();
+
+        final List<String> events = new LinkedList<>();
+
+        EventSource.EventObserver<String> observer = new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                events.add(event);
+            }
+        };
+
+        CompositeNotificationToken compositeNotificationToken = new CompositeNotificationToken();
+        CompositeNotificationToken nestedNotificationToken = new CompositeNotificationToken();
+        compositeNotificationToken.add(nestedNotificationToken);
+
+        List<EventSource.NotificationToken> handles = new ArrayList<>();
+        for(int i = 0; i < 10000; i++) {
+            handles.add((i % 2 == 0 ? compositeNotificationToken : nestedNotificationToken).track(eventEmitter.startListening(observer)));
+        }
+
+        assertThat(compositeNotificationToken.size()).isEqualTo(5001);
+        assertThat(nestedNotificationToken.size()).isEqualTo(5000);
+
+        handles.get(0).stopListening();
+        handles.get(1).stopListening();
+        handles.get(1).stopListening();
+
+        assertThat(compositeNotificationToken.size()).isEqualTo(5000);
+        assertThat(nestedNotificationToken.size()).isEqualTo(4999);
+        assertThat(eventEmitter.getObserverCount()).isEqualTo(9998);
+
+        eventEmitter.emit("hello");
+
+        assertThat(events.size()).isEqualTo(9998);
+
+        compositeNotificationToken.stopListening();
+
+        assertThat(compositeNotificationToken.size()).isEqualTo(0);
+        assertThat(nestedNotificationToken.size()).isEqualTo(0);
+        assertThat(eventEmitter.getObserverCount()).isEqualTo(0);
+
+        handles.get(2).stopListening(); // already stopped by the composite
+
+        eventEmitter.emit("world");
+
+        assertThat(eventEmitter.getPendingEventCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void compositeNotificationTokenStopsAllTokensWhenOneThrows() {
+        EventEmitter<String> eventEmitter = new EventEmitter<>();
+        EventSource.EventObserver<String> observer = new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+            }
+        };
+
+        final IllegalStateException firstException = new IllegalStateException("first");
+        final IllegalStateException secondException = new IllegalStateException("second");
+
+        CompositeNotificationToken compositeNotificationToken = new CompositeNotificationToken();
+        compositeNotificationToken.add(eventEmitter.startListening(observer));
+        compositeNotificationToken.add(new EventSource.NotificationToken() {
+            @Override
+            public void stopListening() {
+                throw secondException;
+            }
+        });
+        compositeNotificationToken.add(eventEmitter.startListening(observer));
+        compositeNotificationToken.add(new EventSource.NotificationToken() {
+            @Override
+            public void stopListening() {
+                throw firstException;
+            }
+        });
+        compositeNotificationToken.add(eventEmitter.startListening(observer));
+
+        try {
+            compositeNotificationToken.stopListening();
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            assertThat(e).isSameAs(firstException); // stopped in reverse order of addition
+            assertThat(e.getSuppressed()).containsExactly(secondException);
+        }
+
+        assertThat(eventEmitter.getObserverCount()).isEqualTo(0);
+        assertThat(compositeNotificationToken.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void compositeNotificationTokenCanNotBeNestedIntoItself() {
+        CompositeNotificationToken first = new CompositeNotificationToken();
+        CompositeNotificationToken second = new CompositeNotificationToken();
+        CompositeNotificationToken third = new CompositeNotificationToken();
+
+        first.add(second);
+        second.add(third);
+
+        try {
+            first.add(first);
+            Assert.fail();
+        } catch(IllegalArgumentException e) {
+            // OK!
+        }
+
+        try {
+            third.add(first);
+            Assert.fail();
+        } catch(IllegalArgumentException e) {
+            // OK!
+        }
+
+        final List<String> events = new ArrayList<>();
+        EventEmitter<String> eventEmitter = new EventEmitter<>();
+        third.add(eventEmitter.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                events.add(event);
+            }
+        }));
+
+        first.stopListening();
+        eventEmitter.emit("hello");
+
+        assertThat(events).isEmpty();
+        assertThat(third.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void compositeNotificationTokenCanBeUsedFromMultipleThreads() throws InterruptedException {
+        final CompositeNotificationToken compositeNotificationToken = new CompositeNotificationToken();
+
+        final AtomicInteger stopCount = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < 4; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int j = 0; j < 1000; j++) {
+                        EventSource.NotificationToken handle = compositeNotificationToken.track(new EventSource.NotificationToken() {
+                            @Override
+                            public void stopListening() {
+                                stopCount.incrementAndGet();
+                            }
+                        });
+                        if(j % 2 == 0) {
+                            handle.stopListening();
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(compositeNotificationToken.size()).isEqualTo(2000);
+
+        compositeNotificationToken.stopListening();
+
+        assertThat(stopCount.get()).isEqualTo(4000);
+    }
+
+    @Test
+    public void trampolinedEmitterDispatchesNestedEventsBreadthFirst() {
+        final EventEmitter<Integer> eventEmitter = new EventEmitter.Builder<Integer>()
+            .setTrampolined(true)
+            .build();
+
+        final List<String> calls = new LinkedList<>();
+
+        EventSource.NotificationToken first = eventEmitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                calls.add("first" + event);
+            }
+        });
+
+        EventSource.NotificationToken second = eventEmitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                calls.add("second" + event);
+                if(event < 2) {
+                    eventEmitter.emit(event + 1);
+                }
+            }
+        });
+
+        eventEmitter.emit(0);
+
+        assertThat(calls).containsExactly("second0", "first0", "second1", "first1", "second2", "first2");
+
+        first.stopListening();
+        second.stopListening();
+    }
+
+    @Test
+    public void trampolinedEmitterKeepsOrderAfterObserverThrows() {
+        final EventEmitter<Integer> eventEmitter = new EventEmitter.Builder<Integer>()
+            .setTrampolined(true)
+            .build();
+
+        final List<Integer> events = new LinkedList<>();
+
+        EventSource.NotificationToken token = eventEmitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                events.add(event);
+                if(event == 0) {
+                    eventEmitter.emit(1);
+                    eventEmitter.emit(2);
+                } else if(event == 1) {
+                    throw new IllegalStateException("Observer failed");
+                }
+            }
+        });
+
+        try {
+            eventEmitter.emit(0);
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            // OK!
+        }
+
+        eventEmitter.emit(3);
+
+        assertThat(events).containsExactly(0, 1, 2, 3);
+
+        token.stopListening();
+    }
+
+    @Test
+    public void trampolinedEmitterHasConstantStackDepth() {
+        final EventEmitter<Integer> eventEmitter = new EventEmitter.Builder<Integer>()
+            .setTrampolined(true)
+            .build();
+
+        final int[] lastEvent = new int[1];
+
+        EventSource.NotificationToken token = eventEmitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                lastEvent[0] = event;
+                if(event < 100000) {
+                    eventEmitter.emit(event + 1);
+                }
+            }
+        });
+
+        eventEmitter.emit(0);
+
+        assertThat(lastEvent[0]).isEqualTo(100000);
+
+        token.stopListening();
+    }
+
+    @Test
+    public void observersAreNotifiedInPriorityOrder() {
+        EventEmitter<String> eventEmitter = new EventEmitter<>();
+
+        final List<String> calls = new LinkedList<>();
+
+        EventSource.NotificationToken low = eventEmitter.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                calls.add("low");
+            }
+        }, -1);
+
+        EventSource.NotificationToken normal = eventEmitter.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                calls.add("normal");
+            }
+        });
+
+        EventSource.NotificationToken high = eventEmitter.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                calls.add("high");
+            }
+        }, 10);
+
+        EventSource.NotificationToken medium = eventEmitter.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                calls.add("medium");
+            }
+        }, 5);
+
+        eventEmitter.emit("hello");
+
+        assertThat(calls).containsExactly("high", "medium", "normal", "low");
+
+        calls.clear();
+        high.stopListening();
+        low.stopListening();
+
+        eventEmitter.emit("world");
+
+        assertThat(calls).containsExactly("medium", "normal");
+
+        medium.stopListening();
+        normal.stopListening();
+
+        eventEmitter.emit("pending");
+
+        assertThat(eventEmitter.getPendingEventCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void consumedEventIsNotReceivedByTheRemainingObservers() {
+        EventEmitter<TestConsumableEvent> eventEmitter = new EventEmitter<>();
+
+        final List<String> calls = new LinkedList<>();
+
+        EventSource.NotificationToken fastPath = eventEmitter.startListening(new EventSource.EventObserver<TestConsumableEvent>() {
+            @Override
+            public void onEventReceived(@Nonnull TestConsumableEvent event) {
+                calls.add("fast" + event.value);
+                if(event.value % 2 == 0) {
+                    event.isConsumed = true;
+                }
+            }
+        }, 1);
+
+        EventSource.NotificationToken slowPath = eventEmitter.startListening(new EventSource.EventObserver<TestConsumableEvent>() {
+            @Override
+            public void onEventReceived(@Nonnull TestConsumableEvent event) {
+                calls.add("slow" + event.value);
+            }
+        });
+
+        eventEmitter.emit(new TestConsumableEvent(0));
+        eventEmitter.emit(new TestConsumableEvent(1));
+        eventEmitter.emitAll(Arrays.asList(new TestConsumableEvent(2), new TestConsumableEvent(3)));
+
+        assertThat(calls).containsExactly("fast0", "fast1", "slow1", "fast2", "fast3", "slow3");
+
+        fastPath.stopListening();
+        slowPath.stopListening();
+    }
+
+    @Test
+    public void consumedEventsAreNotReceivedByBatchObservers() {
+        EventEmitter<TestConsumableEvent> eventEmitter = new EventEmitter<>();
+
+        final List<String> calls = new LinkedList<>();
+
+        EventSource.NotificationToken fastPath = eventEmitter.startListening(new EventSource.EventObserver<TestConsumableEvent>() {
+            @Override
+            public void onEventReceived(@Nonnull TestConsumableEvent event) {
+                if(event.value % 2 == 0) {
+                    event.isConsumed = true;
+                }
+            }
+        }, 1);
+
+        EventSource.NotificationToken slowPath = eventEmitter.startListening(new BatchEventObserver<TestConsumableEvent>() {
+            @Override
+            public void onEventsReceived(@Nonnull List<TestConsumableEvent> events) {
+                for(TestConsumableEvent event : events) {
+                    calls.add("batch" + event.value);
+                }
+            }
+
+            @Override
+            public void onEventReceived(@Nonnull TestConsumableEvent event) {
+                calls.add("single" + event.value);
+            }
+        });
+
+        eventEmitter.emitAll(Arrays.asList(new TestConsumableEvent(0), new TestConsumableEvent(1), new TestConsumableEvent(2), new TestConsumableEvent(3)));
+        eventEmitter.emitAll(Arrays.asList(new TestConsumableEvent(4), new TestConsumableEvent(6)));
+
+        assertThat(calls).containsExactly("batch1", "batch3");
+
+        fastPath.stopListening();
+        slowPath.stopListening();
+    }
+
+    private static final class TestConsumableEvent implements ConsumableEvent {
+        final int value;
+
+        boolean isConsumed = false;
+
+        TestConsumableEvent(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean isConsumed() {
+            return isConsumed;
+        }
+    }
+}
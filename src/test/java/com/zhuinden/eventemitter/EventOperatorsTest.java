@@ -0,0 +1,119 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventOperatorsTest {
+    private final VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+
+    private final EventEmitter<Integer> emitter = new EventEmitter<>();
+
+    private <T> EventSource.NotificationToken collect(EventSource<T> eventSource, final List<T> events) {
+        return eventSource.startListening(new EventSource.EventObserver<T>() {
+            @Override
+            public void onEventReceived(@Nonnull T event) {
+                events.add(event);
+            }
+        });
+    }
+
+    @Test
+    public void throttleFirstIgnoresEventsDuringTheWindow() {
+        List<Integer> events = new ArrayList<>();
+        EventSource.NotificationToken token = collect(EventOperators.throttleFirst(emitter, 100, TimeUnit.MILLISECONDS, scheduler), events);
+
+        emitter.emit(1);
+        emitter.emit(2);
+        scheduler.advanceTimeBy(99, TimeUnit.MILLISECONDS);
+        emitter.emit(3);
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        emitter.emit(4);
+        emitter.emit(5);
+
+        assertThat(events).containsExactly(1, 4);
+
+        token.stopListening();
+    }
+
+    @Test
+    public void debounceReceivesTheLatestEventAfterTheTimeout() {
+        List<Integer> events = new ArrayList<>();
+        EventSource.NotificationToken token = collect(EventOperators.debounce(emitter, 100, TimeUnit.MILLISECONDS, scheduler), events);
+
+        emitter.emit(1);
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        emitter.emit(2);
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        emitter.emit(3);
+        scheduler.advanceTimeBy(99, TimeUnit.MILLISECONDS);
+
+        assertThat(events).isEmpty();
+
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+        assertThat(events).containsExactly(3);
+
+        emitter.emit(4);
+        token.stopListening();
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+        assertThat(events).containsExactly(3);
+    }
+
+    @Test
+    public void sampleReceivesTheLatestEventOfEachInterval() {
+        List<Integer> events = new ArrayList<>();
+        EventSource.NotificationToken token = collect(EventOperators.sample(emitter, 100, TimeUnit.MILLISECONDS, scheduler), events);
+
+        emitter.emit(1);
+        emitter.emit(2);
+        scheduler.advanceTimeBy(150, TimeUnit.MILLISECONDS);
+        emitter.emit(3);
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        assertThat(events).containsExactly(2, 3);
+
+        token.stopListening();
+    }
+
+    @Test
+    public void bufferTimeReceivesTheEventsOfEachWindow() {
+        List<List<Integer>> events = new ArrayList<>();
+        EventSource.NotificationToken token = collect(EventOperators.bufferTime(emitter, 100, TimeUnit.MILLISECONDS, scheduler), events);
+
+        emitter.emit(1);
+        emitter.emit(2);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+        emitter.emit(3);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        assertThat(events).containsExactly(Arrays.asList(1, 2), Arrays.asList(3));
+
+        token.stopListening();
+    }
+}
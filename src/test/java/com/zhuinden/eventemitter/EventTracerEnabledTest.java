@@ -0,0 +1,108 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs with tracing enabled, in the separate {@code tracingTest} task.
+ */
+public class EventTracerEnabledTest {
+    @Test
+    public void emitterRecordsItsDispatchPaths() throws IOException {
+        assertThat(EventTracer.ENABLED).isTrue();
+        EventTracer.clear();
+
+        final EventEmitter<Integer> eventEmitter = new EventEmitter.Builder<Integer>()
+            .setTrampolined(true)
+            .build();
+
+        eventEmitter.emit(0); // no observers
+
+        EventSource.NotificationToken token = eventEmitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                if(event == 1) {
+                    eventEmitter.emit(2); // appended to the nested events
+                }
+            }
+        });
+
+        eventEmitter.emit(1);
+
+        File file = File.createTempFile("event-tracer", ".bin");
+        try {
+            EventTracer.dump(file);
+
+            assertThat(readKinds(file)).containsExactly(
+                EventTracer.KIND_QUEUED, // 0
+                EventTracer.KIND_NOTIFY, // 0
+                EventTracer.KIND_PENDING, // 0
+                EventTracer.KIND_QUEUED, // 2, emitted during the notification of 1
+                EventTracer.KIND_NOTIFY, // 1
+                EventTracer.KIND_NOTIFY, // 2
+                EventTracer.KIND_DIRECT // 1
+            );
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+
+        token.stopListening();
+    }
+
+    private static List<Byte> readKinds(File file) throws IOException {
+        List<Byte> kinds = new ArrayList<>();
+        DataInputStream input = new DataInputStream(new FileInputStream(file));
+        try {
+            input.readInt();
+            input.readInt();
+            for(int i = 0, classCount = input.readInt(); i < classCount; i++) {
+                input.readUTF();
+            }
+            for(int i = 0, threadCount = input.readInt(); i < threadCount; i++) {
+                long threadId = input.readLong();
+                input.readUTF();
+                for(int j = 0, recordCount = input.readInt(); j < recordCount; j++) {
+                    byte kind = input.readByte();
+                    input.readInt();
+                    input.readInt();
+                    input.readInt();
+                    input.readInt();
+                    input.readLong();
+                    input.readLong();
+                    if(threadId == Thread.currentThread().getId()) {
+                        kinds.add(kind);
+                    }
+                }
+            }
+        } finally {
+            input.close();
+        }
+        return kinds;
+    }
+}
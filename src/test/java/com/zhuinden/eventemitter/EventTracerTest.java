@@ -0,0 +1,166 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventTracerTest {
+    @Test
+    public void recordsAreDumpedToBinaryFile() throws IOException {
+        EventTracer.clear();
+
+        Object observer = new Object();
+        EventTracer.recordEmit(EventTracer.KIND_QUEUED, 1, "queued", 100L, 150L);
+        EventTracer.recordNotify(1, "direct", observer, 200L, 250L);
+        EventTracer.recordEmit(EventTracer.KIND_DIRECT, 1, "direct", 190L, 300L);
+
+        File file = File.createTempFile("event-tracer", ".bin");
+        try {
+            EventTracer.dump(file);
+
+            DataInputStream input = new DataInputStream(new FileInputStream(file));
+            try {
+                assertThat(input.readInt()).isEqualTo(EventTracer.MAGIC);
+                assertThat(input.readInt()).isEqualTo(EventTracer.VERSION);
+                List<String> classNames = new ArrayList<>();
+                for(int i = 0, classCount = input.readInt(); i < classCount; i++) {
+                    classNames.add(input.readUTF());
+                }
+                assertThat(classNames).containsExactly("java.lang.String", "java.lang.Object");
+
+                List<Byte> kinds = new ArrayList<>();
+                List<Long> durations = new ArrayList<>();
+                for(int i = 0, threadCount = input.readInt(); i < threadCount; i++) {
+                    long threadId = input.readLong();
+                    input.readUTF();
+                    int recordCount = input.readInt();
+                    if(threadId != Thread.currentThread().getId()) {
+                        assertThat(recordCount).isEqualTo(0);
+                    }
+                    for(int j = 0; j < recordCount; j++) {
+                        kinds.add(input.readByte());
+                        assertThat(input.readInt()).isEqualTo(1);
+                        assertThat(input.readInt()).isEqualTo(0);
+                        int observerClassIndex = input.readInt();
+                        int observerId = input.readInt();
+                        if(observerClassIndex >= 0) {
+                            assertThat(observerId).isEqualTo(System.identityHashCode(observer));
+                        }
+                        input.readLong();
+                        durations.add(input.readLong());
+                    }
+                }
+                assertThat(kinds).containsExactly(EventTracer.KIND_QUEUED, EventTracer.KIND_NOTIFY, EventTracer.KIND_DIRECT);
+                assertThat(durations).containsExactly(50L, 50L, 110L);
+            } finally {
+                input.close();
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    @Test
+    public void recordsAreDumpedToChromeTrace() throws IOException {
+        EventTracer.clear();
+
+        long startNanos = System.nanoTime();
+        EventTracer.recordNotify(7, 42, new StringBuilder(), startNanos, startNanos + 2500L);
+
+        File file = File.createTempFile("event-tracer", ".json");
+        try {
+            EventTracer.dumpChromeTrace(file);
+
+            String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            assertThat(json).startsWith("{\"traceEvents\":[{\"name\":\"java.lang.StringBuilder\",\"cat\":\"notify\",\"ph\":\"X\"");
+            assertThat(json).contains("\"dur\":2.500");
+            assertThat(json).contains("\"args\":{\"emitter\":7,\"event\":\"java.lang.Integer\",\"observer\":\"java.lang.StringBuilder@");
+            assertThat(json).contains("\"name\":\"thread_name\"");
+            assertThat(json.endsWith("]}")).isTrue();
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    @Test
+    public void buffersOfTerminatedThreadsAreReleasedAfterDump() throws Exception {
+        EventTracer.clear();
+
+        final long[] threadId = new long[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                threadId[0] = Thread.currentThread().getId();
+                EventTracer.recordEmit(EventTracer.KIND_DIRECT, 1, "event", 100L, 200L);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        File file = File.createTempFile("event-tracer", ".bin");
+        try {
+            EventTracer.dump(file);
+            assertThat(readThreadIds(file)).contains(threadId[0]);
+
+            EventTracer.dump(file);
+            assertThat(readThreadIds(file)).doesNotContain(threadId[0]);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static List<Long> readThreadIds(File file) throws IOException {
+        List<Long> threadIds = new ArrayList<>();
+        DataInputStream input = new DataInputStream(new FileInputStream(file));
+        try {
+            input.readInt();
+            input.readInt();
+            for(int i = 0, classCount = input.readInt(); i < classCount; i++) {
+                input.readUTF();
+            }
+            for(int i = 0, threadCount = input.readInt(); i < threadCount; i++) {
+                threadIds.add(input.readLong());
+                input.readUTF();
+                for(int j = 0, recordCount = input.readInt(); j < recordCount; j++) {
+                    input.readByte();
+                    input.readInt();
+                    input.readInt();
+                    input.readInt();
+                    input.readInt();
+                    input.readLong();
+                    input.readLong();
+                }
+            }
+        } finally {
+            input.close();
+        }
+        return threadIds;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HandoffEventEmitterTest {
+    @Test
+    public void eventsAreReceivedInOrderOnTheOwnerThread() throws InterruptedException {
+        final HandoffEventEmitter<Integer> emitter = new HandoffEventEmitter<>(64, HandoffEventEmitter.WakeStrategy.PARK);
+
+        final int eventCount = 100000;
+        final Thread ownerThread = Thread.currentThread();
+        final List<Integer> events = new ArrayList<>();
+        final boolean[] isReceivedOnOtherThread = new boolean[1];
+
+        EventSource.NotificationToken token = emitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                if(Thread.currentThread() != ownerThread) {
+                    isReceivedOnOtherThread[0] = true;
+                }
+                events.add(event);
+            }
+        });
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for(int i = 0; i < eventCount; i++) {
+                    emitter.emit(i);
+                }
+            }
+        });
+        producer.start();
+
+        while(events.size() < eventCount) {
+            emitter.awaitAndDrain();
+        }
+        producer.join();
+
+        assertThat(isReceivedOnOtherThread[0]).isFalse();
+        assertThat(events).hasSize(eventCount);
+        for(int i = 0; i < eventCount; i++) {
+            assertThat(events.get(i)).isEqualTo(i);
+        }
+
+        token.stopListening();
+    }
+
+    @Test
+    public void executorWakeStrategyDrainsOnTheEventLoop() throws Exception {
+        ExecutorService eventLoop = Executors.newSingleThreadExecutor();
+        final HandoffEventEmitter.WakeStrategy wakeStrategy = HandoffEventEmitter.WakeStrategy.executor(eventLoop);
+
+        final int eventCount = 10000;
+        final List<Integer> events = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(eventCount);
+
+        final HandoffEventEmitter<Integer> emitter = eventLoop.submit(new Callable<HandoffEventEmitter<Integer>>() {
+            @Override
+            public HandoffEventEmitter<Integer> call() {
+                HandoffEventEmitter<Integer> emitter = new HandoffEventEmitter<>(16, wakeStrategy);
+                emitter.startListening(new EventSource.EventObserver<Integer>() {
+                    @Override
+                    public void onEventReceived(@Nonnull Integer event) {
+                        events.add(event);
+                        latch.countDown();
+                    }
+                });
+                return emitter;
+            }
+        }).get();
+
+        for(int i = 0; i < eventCount; i++) {
+            emitter.emit(i);
+        }
+
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+
+        eventLoop.submit(new Runnable() {
+            @Override
+            public void run() {
+                for(int i = 0; i < eventCount; i++) {
+                    assertThat(events.get(i)).isEqualTo(i);
+                }
+            }
+        }).get();
+
+        eventLoop.shutdown();
+    }
+
+    @Test
+    public void offerFailsWhenTheRingBufferIsFull() {
+        HandoffEventEmitter<String> emitter = new HandoffEventEmitter<>(3, HandoffEventEmitter.WakeStrategy.BUSY_SPIN);
+
+        assertThat(emitter.getCapacity()).isEqualTo(4);
+
+        for(int i = 0; i < 4; i++) {
+            assertThat(emitter.offer("event" + i)).isTrue();
+        }
+        assertThat(emitter.offer("event4")).isFalse();
+
+        assertThat(emitter.drain()).isEqualTo(4);
+        assertThat(emitter.getPendingEventCount()).isEqualTo(4); // no observers yet
+
+        assertThat(emitter.offer("event4")).isTrue();
+
+        final List<String> events = new ArrayList<>();
+        EventSource.NotificationToken token = emitter.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                events.add(event);
+            }
+        });
+
+        assertThat(emitter.drain()).isEqualTo(1);
+        assertThat(events).containsExactly("event0", "event1", "event2", "event3", "event4");
+
+        token.stopListening();
+    }
+
+    @Test
+    public void drainShouldBeCalledOnTheOwnerThread() throws InterruptedException {
+        final HandoffEventEmitter<String> emitter = new HandoffEventEmitter<>(4, HandoffEventEmitter.WakeStrategy.YIELD);
+        final IllegalStateException[] exception = new IllegalStateException[1];
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    emitter.drain();
+                } catch(IllegalStateException e) {
+                    exception[0] = e;
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+
+        if(exception[0] == null) {
+            Assert.fail();
+        }
+    }
+}
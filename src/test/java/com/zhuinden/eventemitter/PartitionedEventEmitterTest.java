@@ -0,0 +1,195 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PartitionedEventEmitterTest {
+    private static final KeySelector<Integer, Integer> MOD_8 = new KeySelector<Integer, Integer>() {
+        @Nonnull
+        @Override
+        public Integer getKey(@Nonnull Integer event) {
+            return event % 8;
+        }
+    };
+
+    @Test
+    public void eventsWithTheSameKeyAreReceivedInOrder() throws InterruptedException {
+        PartitionedEventEmitter<Integer> emitter = new PartitionedEventEmitter<>(4, MOD_8);
+
+        final int eventCount = 1000;
+
+        emitter.emit(0); // enqueued on its shard until there is an observer
+
+        final Map<Integer, List<Integer>> eventsByKey = new HashMap<>();
+        final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+        final CountDownLatch latch = new CountDownLatch(eventCount);
+
+        EventSource.NotificationToken token = emitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                threadNames.add(Thread.currentThread().getName());
+                synchronized(eventsByKey) {
+                    List<Integer> events = eventsByKey.get(event % 8);
+                    if(events == null) {
+                        events = new ArrayList<>();
+                        eventsByKey.put(event % 8, events);
+                    }
+                    events.add(event);
+                }
+                latch.countDown();
+            }
+        });
+
+        for(int i = 1; i < eventCount; i++) {
+            emitter.emit(i);
+        }
+
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+
+        synchronized(eventsByKey) {
+            assertThat(eventsByKey.size()).isEqualTo(8);
+            for(Map.Entry<Integer, List<Integer>> entry : eventsByKey.entrySet()) {
+                List<Integer> events = entry.getValue();
+                assertThat(events.size()).isEqualTo(eventCount / 8);
+                for(int i = 0; i < events.size(); i++) {
+                    assertThat(events.get(i)).isEqualTo(entry.getKey() + i * 8);
+                }
+            }
+        }
+        assertThat(threadNames.contains(Thread.currentThread().getName())).isFalse();
+
+        token.stopListening();
+
+        try {
+            token.stopListening();
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            // OK!
+        }
+
+        emitter.shutdown();
+    }
+
+    @Test
+    public void observerCanListenToSelectedShards() throws InterruptedException {
+        PartitionedEventEmitter<Integer> emitter = new PartitionedEventEmitter<>(2, MOD_8);
+
+        final int shardIndex = emitter.getShardIndex(3);
+
+        List<Integer> expected = new ArrayList<>();
+        for(int i = 0; i < 64; i++) {
+            if(emitter.getShardIndex(i) == shardIndex) {
+                expected.add(i);
+            }
+        }
+
+        final List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(expected.size());
+
+        EventSource.NotificationToken token = emitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                events.add(event);
+                latch.countDown();
+            }
+        }, shardIndex);
+
+        for(int i = 0; i < 64; i++) {
+            emitter.emit(i);
+        }
+
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(events).isEqualTo(expected);
+
+        try {
+            emitter.startListening(new EventSource.EventObserver<Integer>() {
+                @Override
+                public void onEventReceived(@Nonnull Integer event) {
+                }
+            }, 2);
+            Assert.fail();
+        } catch(IllegalArgumentException e) {
+            // OK!
+        }
+
+        token.stopListening();
+        emitter.shutdown();
+    }
+
+    @Test
+    public void shardKeepsDispatchingAfterObserverThrows() throws InterruptedException {
+        PartitionedEventEmitter<Integer> emitter = new PartitionedEventEmitter<>(1, MOD_8);
+
+        final List<Throwable> reportedErrors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable throwable) {
+                reportedErrors.add(throwable);
+            }
+        });
+
+        try {
+            final List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+            final CountDownLatch latch = new CountDownLatch(1);
+
+            EventSource.NotificationToken token = emitter.startListening(new EventSource.EventObserver<Integer>() {
+                @Override
+                public void onEventReceived(@Nonnull Integer event) {
+                    if(event == 0) {
+                        throw new IllegalArgumentException("Bad event");
+                    }
+                    if(event == 1) {
+                        throw new AssertionError("Failed assertion");
+                    }
+                    events.add(event);
+                    latch.countDown();
+                }
+            });
+
+            emitter.emit(0);
+            emitter.emit(1);
+            emitter.emit(2);
+
+            assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(events).containsExactly(2);
+            assertThat(reportedErrors).hasSize(2);
+
+            emitter.setPaused(true); // the shard is still on its original thread
+            emitter.setPaused(false);
+            token.stopListening();
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+            emitter.shutdown();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrimitiveEventEmitterTest {
+    @Test
+    public void intEventEmitterWorks() {
+        IntEventEmitter emitter = new IntEventEmitter();
+
+        emitter.emit(1);
+        emitter.emit(-2);
+
+        assertThat(emitter.getPendingEventCount()).isEqualTo(2);
+
+        final List<Integer> events = new ArrayList<>();
+
+        EventSource.NotificationToken token = emitter.startListening(new IntEventSource.IntEventObserver() {
+            @Override
+            public void onEventReceived(int event) {
+                events.add(event);
+            }
+        });
+
+        assertThat(events).containsExactly(1, -2);
+
+        emitter.setPaused(true);
+        emitter.emit(Integer.MAX_VALUE);
+
+        assertThat(events).containsExactly(1, -2);
+
+        emitter.setPaused(false);
+
+        assertThat(events).containsExactly(1, -2, Integer.MAX_VALUE);
+
+        token.stopListening();
+
+        try {
+            token.stopListening();
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            // OK!
+        }
+    }
+
+    @Test
+    public void pendingEventsKeepTheirOrderWhenTheBufferGrowsWrappedAround() {
+        IntEventEmitter emitter = new IntEventEmitter();
+
+        final List<Integer> events = new ArrayList<>();
+
+        EventSource.NotificationToken token = emitter.startListening(new IntEventSource.IntEventObserver() {
+            @Override
+            public void onEventReceived(int event) {
+                events.add(event);
+            }
+        });
+
+        emitter.setPaused(true);
+        for(int i = 0; i < 10; i++) {
+            emitter.emit(i);
+        }
+        emitter.setPaused(false);
+        emitter.setPaused(true);
+        for(int i = 10; i < 50; i++) {
+            emitter.emit(i);
+        }
+
+        assertThat(emitter.getPendingEventCount()).isEqualTo(40);
+
+        emitter.setPaused(false);
+
+        assertThat(events).hasSize(50);
+        for(int i = 0; i < 50; i++) {
+            assertThat(events.get(i)).isEqualTo(i);
+        }
+        assertThat(emitter.getPendingEventCount()).isEqualTo(0);
+
+        token.stopListening();
+    }
+
+    @Test
+    public void longEventEmitterWorks() {
+        LongEventEmitter emitter = new LongEventEmitter();
+
+        for(long i = 0; i < 100; i++) {
+            emitter.emit(Long.MAX_VALUE - i);
+        }
+
+        final List<Long> events = new ArrayList<>();
+
+        EventSource.NotificationToken token = emitter.startListening(new LongEventSource.LongEventObserver() {
+            @Override
+            public void onEventReceived(long event) {
+                events.add(event);
+            }
+        });
+
+        assertThat(events).hasSize(100);
+        assertThat(events.get(0)).isEqualTo(Long.MAX_VALUE);
+        assertThat(events.get(99)).isEqualTo(Long.MAX_VALUE - 99);
+
+        token.stopListening();
+    }
+
+    @Test
+    public void doubleEventEmitterWorks() {
+        DoubleEventEmitter emitter = new DoubleEventEmitter();
+
+        emitter.emit(0.5);
+        emitter.emit(Double.NaN);
+        emitter.emit(-0.0);
+
+        final List<Double> events = new ArrayList<>();
+
+        EventSource.NotificationToken token = emitter.startListening(new DoubleEventSource.DoubleEventObserver() {
+            @Override
+            public void onEventReceived(double event) {
+                events.add(event);
+            }
+        });
+
+        emitter.emit(Double.MAX_VALUE);
+
+        assertThat(events).containsExactly(0.5, Double.NaN, -0.0, Double.MAX_VALUE);
+
+        token.stopListening();
+    }
+}
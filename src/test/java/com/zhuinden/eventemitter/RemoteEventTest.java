@@ -0,0 +1,295 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class RemoteEventTest {
+    private static final EventSerializer<String> SERIALIZER = new EventSerializer<String>() {
+        @Nonnull
+        @Override
+        public byte[] serialize(@Nonnull String event) {
+            return event.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Nonnull
+        @Override
+        public String deserialize(@Nonnull byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    @Test
+    public void eventsAreSentToAllConnectedSources() throws IOException, InterruptedException {
+        RemoteEventSink<String> sink = new RemoteEventSink<>(0, SERIALIZER);
+        RemoteEventSource<String> firstSource = new RemoteEventSource<>(sink.getPort(), SERIALIZER);
+        RemoteEventSource<String> secondSource = new RemoteEventSource<>(sink.getPort(), SERIALIZER);
+
+        EventEmitter<String> emitter = new EventEmitter<>();
+        EventSource.NotificationToken sinkToken = emitter.startListening(sink);
+
+        final int eventCount = 10000;
+
+        StringBuilder largeEvent = new StringBuilder();
+        for(int i = 0; i < 100000; i++) {
+            largeEvent.append('x');
+        }
+
+        List<String> expected = new ArrayList<>();
+        for(int i = 0; i < eventCount - 1; i++) {
+            emitter.emit("event" + i);
+            expected.add("event" + i);
+        }
+        emitter.emit(largeEvent.toString());
+        expected.add(largeEvent.toString());
+
+        final List<String> firstEvents = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> secondEvents = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch latch = new CountDownLatch(eventCount * 2);
+
+        EventSource.NotificationToken firstToken = firstSource.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                firstEvents.add(event);
+                latch.countDown();
+            }
+        });
+        EventSource.NotificationToken secondToken = secondSource.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                secondEvents.add(event);
+                latch.countDown();
+            }
+        });
+
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(firstEvents).isEqualTo(expected);
+        assertThat(secondEvents).isEqualTo(expected);
+        assertThat(sink.getConnectionCount()).isEqualTo(2);
+
+        sinkToken.stopListening();
+        firstToken.stopListening();
+        secondToken.stopListening();
+        firstSource.close();
+        secondSource.close();
+        sink.close();
+    }
+
+    @Test
+    public void stalledSourceIsDisconnectedWithoutHoldingBackOthers() throws IOException, InterruptedException {
+        RemoteEventSink<String> sink = new RemoteEventSink<>(0, SERIALIZER);
+        Socket stalledSocket = new Socket(InetAddress.getLoopbackAddress(), sink.getPort());
+        DataOutputStream stalledOutput = new DataOutputStream(stalledSocket.getOutputStream());
+        stalledOutput.writeInt(RemoteEventSink.MAGIC);
+        stalledOutput.writeInt(0);
+        stalledOutput.flush();
+        assertThat(new DataInputStream(stalledSocket.getInputStream()).readInt()).isEqualTo(RemoteEventSink.MAGIC);
+
+        RemoteEventSource<String> source = new RemoteEventSource<>(sink.getPort(), SERIALIZER);
+        final int eventCount = 128;
+        final Semaphore received = new Semaphore(0);
+        EventSource.NotificationToken token = source.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                received.release();
+            }
+        });
+        assertThat(sink.getConnectionCount()).isEqualTo(2);
+
+        char[] chars = new char[1024 * 1024];
+        Arrays.fill(chars, 'x');
+        String largeEvent = new String(chars);
+        for(int i = 0; i < eventCount; i++) { // the stalled socket never reads, so it falls behind
+            sink.onEventReceived(largeEvent);
+            assertThat(received.tryAcquire(10, TimeUnit.SECONDS)).isTrue();
+        }
+
+        assertThat(sink.getConnectionCount()).isEqualTo(1);
+        assertThat(sink.getDroppedEventCount()).isEqualTo(0L);
+
+        token.stopListening();
+        stalledSocket.close();
+        source.close();
+        sink.close();
+    }
+
+    @Test
+    public void sourceClosesConnectionOnInvalidFrameLength() throws IOException, InterruptedException {
+        final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        final CountDownLatch closedLatch = new CountDownLatch(1);
+        Thread sinkThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = serverSocket.accept();
+                    socket.setSoTimeout(10000);
+                    DataInputStream input = new DataInputStream(socket.getInputStream());
+                    input.readInt(); // magic
+                    input.skipBytes(input.readInt()); // token
+                    DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+                    output.writeInt(RemoteEventSink.MAGIC);
+                    output.writeInt(Integer.MAX_VALUE);
+                    output.flush();
+                    if(input.read() == -1) { // the source closed the connection
+                        closedLatch.countDown();
+                    }
+                    socket.close();
+                } catch(IOException e) {
+                    // the latch is not counted down
+                }
+            }
+        });
+        sinkThread.start();
+
+        RemoteEventSource<String> source = new RemoteEventSource<>(serverSocket.getLocalPort(), SERIALIZER);
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        EventSource.NotificationToken token = source.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                events.add(event);
+            }
+        });
+
+        assertThat(closedLatch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(events).isEmpty();
+
+        token.stopListening();
+        source.close();
+        sinkThread.join();
+        serverSocket.close();
+    }
+
+    @Test
+    public void sinkOnlyAcceptsSourcesWithTheToken() throws IOException, InterruptedException {
+        byte[] token = "secret".getBytes(StandardCharsets.UTF_8);
+        RemoteEventSink<String> sink = new RemoteEventSink<>(0, SERIALIZER, token);
+
+        try {
+            new RemoteEventSource<>(sink.getPort(), SERIALIZER);
+            fail();
+        } catch(IOException e) {
+            // expected
+        }
+        try {
+            new RemoteEventSource<>(sink.getPort(), SERIALIZER, "other".getBytes(StandardCharsets.UTF_8));
+            fail();
+        } catch(IOException e) {
+            // expected
+        }
+
+        RemoteEventSource<String> source = new RemoteEventSource<>(sink.getPort(), SERIALIZER, token);
+        final CountDownLatch latch = new CountDownLatch(1);
+        EventSource.NotificationToken notificationToken = source.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                latch.countDown();
+            }
+        });
+        sink.onEventReceived("hello");
+
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(sink.getConnectionCount()).isEqualTo(1);
+
+        notificationToken.stopListening();
+        source.close();
+        sink.close();
+    }
+
+    @Test
+    public void sourceKeepsReceivingAfterSerializerOrObserverThrows() throws IOException, InterruptedException {
+        EventSerializer<String> serializer = new EventSerializer<String>() {
+            @Nonnull
+            @Override
+            public byte[] serialize(@Nonnull String event) {
+                return SERIALIZER.serialize(event);
+            }
+
+            @Nonnull
+            @Override
+            public String deserialize(@Nonnull byte[] bytes) {
+                String event = SERIALIZER.deserialize(bytes);
+                if(event.equals("bad")) {
+                    throw new IllegalArgumentException("Bad event!");
+                }
+                return event;
+            }
+        };
+
+        final List<Throwable> reportedErrors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable throwable) {
+                reportedErrors.add(throwable);
+            }
+        });
+
+        RemoteEventSink<String> sink = new RemoteEventSink<>(0, serializer);
+        RemoteEventSource<String> source = new RemoteEventSource<>(sink.getPort(), serializer);
+        try {
+            final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+            final CountDownLatch latch = new CountDownLatch(1);
+            EventSource.NotificationToken token = source.startListening(new EventSource.EventObserver<String>() {
+                @Override
+                public void onEventReceived(@Nonnull String event) {
+                    events.add(event);
+                    if(event.equals("boom")) {
+                        throw new IllegalStateException("Boom!");
+                    }
+                    if(event.equals("last")) {
+                        latch.countDown();
+                    }
+                }
+            });
+
+            sink.onEventReceived("first");
+            sink.onEventReceived("bad");
+            sink.onEventReceived("boom");
+            sink.onEventReceived("last");
+
+            assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(events).containsExactly("first", "boom", "last");
+            assertThat(reportedErrors).hasSize(2);
+            assertThat(sink.getConnectionCount()).isEqualTo(1);
+
+            token.stopListening();
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+            source.close();
+            sink.close();
+        }
+    }
+}
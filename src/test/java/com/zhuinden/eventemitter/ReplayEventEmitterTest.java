@@ -0,0 +1,137 @@
+/*
+ * Copyright 2023 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.eventemitter;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplayEventEmitterTest {
+    @Test
+    public void lastEventsAreReplayedBeforeLiveEvents() {
+        ReplayEventEmitter<Integer> emitter = new ReplayEventEmitter<>(3);
+
+        for(int i = 0; i < 5; i++) {
+            emitter.emit(i);
+        }
+
+        final List<Integer> events = new ArrayList<>();
+
+        EventSource.NotificationToken token = emitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                events.add(event);
+            }
+        });
+
+        assertThat(events).containsExactly(2, 3, 4);
+
+        emitter.emit(5);
+
+        assertThat(events).containsExactly(2, 3, 4, 5);
+
+        final List<Integer> lateEvents = new ArrayList<>();
+
+        EventSource.NotificationToken lateToken = emitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                lateEvents.add(event);
+            }
+        });
+
+        assertThat(lateEvents).containsExactly(3, 4, 5);
+
+        token.stopListening();
+        lateToken.stopListening();
+
+        try {
+            token.stopListening();
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            // OK!
+        }
+
+        emitter.clearHistory();
+
+        assertThat(emitter.getHistoryEventCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void expiredEventsAreNotReplayed() {
+        final long[] now = new long[]{0L};
+
+        ReplayEventEmitter<String> emitter = new ReplayEventEmitter<>(10, 1, TimeUnit.SECONDS, new Ticker() {
+            @Override
+            public long nanoTime() {
+                return now[0];
+            }
+        });
+
+        emitter.emit("old");
+        now[0] = TimeUnit.MILLISECONDS.toNanos(600);
+        emitter.emit("new");
+        now[0] = TimeUnit.MILLISECONDS.toNanos(1200);
+
+        final List<String> events = new ArrayList<>();
+
+        EventSource.NotificationToken token = emitter.startListening(new EventSource.EventObserver<String>() {
+            @Override
+            public void onEventReceived(@Nonnull String event) {
+                events.add(event);
+            }
+        });
+
+        assertThat(events).containsExactly("new");
+        assertThat(emitter.getHistoryEventCount()).isEqualTo(1);
+
+        token.stopListening();
+    }
+
+    @Test
+    public void eventsEmittedDuringReplayAreReceivedInOrder() {
+        final ReplayEventEmitter<Integer> emitter = new ReplayEventEmitter<>(10);
+
+        emitter.emit(0);
+        emitter.emit(1);
+
+        final List<Integer> events = new ArrayList<>();
+
+        EventSource.NotificationToken token = emitter.startListening(new EventSource.EventObserver<Integer>() {
+            @Override
+            public void onEventReceived(@Nonnull Integer event) {
+                events.add(event);
+                if(event == 0) {
+                    emitter.emit(2);
+                }
+            }
+        });
+
+        assertThat(events).containsExactly(0, 1, 2);
+
+        emitter.emit(3);
+
+        assertThat(events).containsExactly(0, 1, 2, 3);
+
+        token.stopListening();
+    }
+}
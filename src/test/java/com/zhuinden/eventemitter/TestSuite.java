@@ -23,6 +23,6 @@ import org.junit.runners.Suite;
  * Created by Owner on 2017. 01. 17..
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({EventEmitterTest.class})
+@Suite.SuiteClasses({EventEmitterTest.class, ConcurrentEventEmitterTest.class, AsyncEventSourceTest.class, PrimitiveEventEmitterTest.class, EventBusTest.class, PartitionedEventEmitterTest.class, ReplayEventEmitterTest.class, EventOperatorsTest.class, RemoteEventTest.class, HandoffEventEmitterTest.class, EventTracerTest.class, ChannelEmitterTest.class})
 public class TestSuite {
 }